@@ -4,7 +4,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
-import android.os.PowerManager;
+import java.util.List;
 
 public class AlarmReceiver extends BroadcastReceiver {
     
@@ -13,76 +13,80 @@ public class AlarmReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.d(TAG, "Alarm received: " + intent.getAction());
+        WakeupStats.record(context, WakeupStats.EVENT_RECEIVER);
         
-        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(
-            PowerManager.PARTIAL_WAKE_LOCK, "FolderDeleter:AlarmWakeLock");
-        wakeLock.acquire(10 * 60 * 1000L); // 10 minutes
+        String action = intent.getAction();
         
-        try {
-            String action = intent.getAction();
-            
-            if (Intent.ACTION_BOOT_COMPLETED.equals(action)) {
-                handleBootCompleted(context);
-            } else if ("com.folderdeleter.DELETE_FOLDERS".equals(action)) {
-                handleFolderDeletion(context);
-            } else if (Intent.ACTION_MY_PACKAGE_REPLACED.equals(action) || 
-                       Intent.ACTION_PACKAGE_REPLACED.equals(action)) {
-                handleAppUpdated(context);
-            }
-            
-        } finally {
-            if (wakeLock.isHeld()) {
-                wakeLock.release();
-            }
+        if (Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            handleBootCompleted(context);
+        } else if ("com.folderdeleter.DELETE_FOLDERS".equals(action)) {
+            handleFolderDeletion(context);
+        } else if (Intent.ACTION_MY_PACKAGE_REPLACED.equals(action) || 
+                   Intent.ACTION_PACKAGE_REPLACED.equals(action)) {
+            handleAppUpdated(context);
         }
     }
     
     private void handleBootCompleted(Context context) {
-        Log.d(TAG, "Device boot completed, starting service");
+        Log.d(TAG, "Device boot completed, re-arming schedule");
         
+        // Resume purging folders staged before the reboot
+        StagedPurgeJobService.schedule(context);
+        
+        rearmSchedule(context);
+    }
+    
+    // Alarms do not survive a reboot or an update; nothing else needs to
+    // start until the next one fires
+    private void rearmSchedule(Context context) {
         SettingsManager settingsManager = new SettingsManager(context);
         if (settingsManager.isServiceEnabled()) {
-            Intent serviceIntent = new Intent(context, FolderDeletionService.class);
-            context.startForegroundService(serviceIntent);
+            new AlarmScheduler(context).scheduleNextDeletion();
         }
+        ThresholdJobService.update(context);
     }
     
     private void handleFolderDeletion(Context context) {
         Log.d(TAG, "Executing folder deletion task");
+        WakeupStats.record(context, WakeupStats.EVENT_ALARM_FIRED);
         
+        if (DeletionRunner.isRunInProgress()) {
+            // Claiming the due folders now would lose them; the running pass
+            // re-arms the schedule when it ends, and they are caught up then
+            Log.d(TAG, "Run in progress, leaving due folders for when it ends");
+            return;
+        }
+        
+        // One alarm covers every folder due now or within the batch window
+        long now = System.currentTimeMillis();
         SettingsManager settingsManager = new SettingsManager(context);
-        FolderManager folderManager = new FolderManager(context);
-        AlarmScheduler alarmScheduler = new AlarmScheduler(context);
+        DeletionSchedule schedule = new DeletionSchedule(settingsManager, now);
+        List<String> dueFolders = schedule.pollDue(now);
         
-        // Perform folder deletion
-        boolean success = folderManager.deleteSelectedFolders();
+        // Arm the next alarm before handing off, so a run killed midway
+        // still leaves the schedule intact. The due folders only count as
+        // run once the run finishes; if it never does, they are overdue at
+        // the next alarm and caught up then.
+        new AlarmScheduler(context).scheduleNextDeletion(schedule);
         
-        if (success) {
-            Log.d(TAG, "Folder deletion completed successfully");
-            NotificationHelper.showDeletionSuccessNotification(context);
-        } else {
-            Log.e(TAG, "Folder deletion failed");
-            NotificationHelper.showDeletionFailureNotification(context);
+        if (dueFolders.isEmpty()) {
+            Log.d(TAG, "No folder due, nothing to run");
+            return;
         }
         
-        // Schedule next deletion
-        alarmScheduler.scheduleNextDeletion();
-        
-        // Update service notification if running
-        if (FolderDeletionService.isRunning()) {
-            Intent serviceIntent = new Intent(context, FolderDeletionService.class);
-            context.startForegroundService(serviceIntent);
+        // Idle is only known to JobScheduler, so a run that needs it is always deferred
+        if (!DeferredRunJobService.checkOrDefer(context, dueFolders, false)) {
+            return;
         }
+        Log.d(TAG, "Running " + dueFolders.size() + " due folders together");
+        
+        // Hosted by a service that lives only as long as the run; the run
+        // holds its own wake lock while it works
+        FolderDeletionService.startRun(context, dueFolders);
     }
     
     private void handleAppUpdated(Context context) {
-        Log.d(TAG, "App was updated, restarting service if needed");
-        
-        SettingsManager settingsManager = new SettingsManager(context);
-        if (settingsManager.isServiceEnabled()) {
-            Intent serviceIntent = new Intent(context, FolderDeletionService.class);
-            context.startForegroundService(serviceIntent);
-        }
+        Log.d(TAG, "App was updated, re-arming schedule");
+        rearmSchedule(context);
     }
 }
\ No newline at end of file
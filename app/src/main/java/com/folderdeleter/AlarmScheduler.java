@@ -7,10 +7,12 @@ import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
 
+// Arms exactly one alarm, for the earliest deadline across all folders
+// (see DeletionSchedule); the receiver works out which folders it covers.
+// Missed runs waiting for an idle window are left to CatchUpJobService.
 public class AlarmScheduler {
     
     private static final String TAG = "AlarmScheduler";
@@ -27,7 +29,14 @@ public class AlarmScheduler {
     }
     
     public void scheduleNextDeletion() {
-        long nextDeletionTime = settingsManager.getNextDeletionTime();
+        scheduleNextDeletion(new DeletionSchedule(settingsManager, System.currentTimeMillis()));
+    }
+    
+    // Arms the head of a schedule the caller has already polled
+    public void scheduleNextDeletion(DeletionSchedule schedule) {
+        long now = System.currentTimeMillis();
+        DeletionSchedule.Deadline next = schedule.peek();
+        CatchUpJobService.update(context, schedule.hasDeferred());
         
         Intent intent = new Intent(context, AlarmReceiver.class);
         intent.setAction("com.folderdeleter.DELETE_FOLDERS");
@@ -40,6 +49,13 @@ public class AlarmScheduler {
         // Cancel any existing alarm
         alarmManager.cancel(pendingIntent);
         
+        if (next == null) {
+            Log.d(TAG, "No folder is scheduled");
+            return;
+        }
+        // A missed deadline fires right away
+        long nextDeletionTime = Math.max(now, next.time);
+        
         // Schedule new alarm
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -50,7 +66,8 @@ public class AlarmScheduler {
                 alarmManager.set(AlarmManager.RTC_WAKEUP, nextDeletionTime, pendingIntent);
             }
             
-            Log.d(TAG, "Next deletion scheduled for: " + new Date(nextDeletionTime));
+            Log.d(TAG, "Next deletion scheduled for: " + new Date(nextDeletionTime) + " (" + next.folderPath + ")");
+            WakeupStats.record(context, WakeupStats.EVENT_ALARM_ARMED);
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to schedule alarm", e);
@@ -67,6 +84,8 @@ public class AlarmScheduler {
         );
         
         alarmManager.cancel(pendingIntent);
+        CatchUpJobService.update(context, false);
+        DeferredRunJobService.cancel(context);
         Log.d(TAG, "All alarms cancelled");
     }
     
@@ -82,8 +101,17 @@ public class AlarmScheduler {
         return pendingIntent != null;
     }
     
+    // Earliest deadline across all selected folders, or -1 if none is scheduled
+    public long getNextDeletionTime() {
+        DeletionSchedule.Deadline next = new DeletionSchedule(settingsManager, System.currentTimeMillis()).peek();
+        return next != null ? next.time : -1;
+    }
+    
     public String getNextDeletionTimeString() {
-        long nextTime = settingsManager.getNextDeletionTime();
+        long nextTime = getNextDeletionTime();
+        if (nextTime < 0) {
+            return "not scheduled";
+        }
         SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy 'at' HH:mm", Locale.getDefault());
         return sdf.format(new Date(nextTime));
     }
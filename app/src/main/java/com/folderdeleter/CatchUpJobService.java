@@ -0,0 +1,77 @@
+package com.folderdeleter;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+import java.util.List;
+
+// Runs missed deletions once the device is idle and charging, for the
+// "when idle" catch-up policy. The job is one-shot: AlarmScheduler schedules
+// it whenever the schedule has deferred runs and cancels it otherwise. If
+// the window comes after the maximum lateness, the runs are skipped instead.
+public class CatchUpJobService extends JobService {
+    
+    private static final String TAG = "CatchUpJobService";
+    private static final int JOB_ID = 3002;
+    
+    public static void update(Context context, boolean hasDeferred) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (!hasDeferred) {
+            jobScheduler.cancel(JOB_ID);
+            return;
+        }
+        
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, CatchUpJobService.class))
+            .setRequiresCharging(true)
+            .setRequiresDeviceIdle(true)
+            .setPersisted(true)
+            .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(TAG, "Failed to schedule catch-up run");
+        }
+    }
+    
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final Context context = getApplicationContext();
+        WakeupStats.record(context, WakeupStats.EVENT_JOB_TICK);
+        if (DeletionRunner.isRunInProgress()) {
+            // Keep waiting; the running pass re-arms the schedule when done
+            return false;
+        }
+        
+        long now = System.currentTimeMillis();
+        List<String> folders = new DeletionSchedule(new SettingsManager(context), now).pollDeferred(now);
+        if (folders.isEmpty()) {
+            // Too late by now; re-arming drops the job
+            new AlarmScheduler(context).scheduleNextDeletion();
+            return false;
+        }
+        // JobScheduler waited for charging and idle; the other conditions are checked here
+        if (!DeferredRunJobService.checkOrDefer(context, folders, true)) {
+            return false;
+        }
+        Log.d(TAG, "Catching up on " + folders.size() + " folders");
+        
+        // The job itself hosts the run, so the process stays up for it
+        FolderManager.PauseCheck pauseCheck = DeferredRunJobService.newPauseCheck(context);
+        return DeletionRunner.runAsync(context, folders, pauseCheck, new DeletionRunner.Callback() {
+            @Override
+            public void onDeletionComplete(DeletionReport report) {
+                DeferredRunJobService.deferRemaining(context, report);
+                NotificationHelper.showReportNotification(context, report);
+                jobFinished(params, false);
+            }
+        });
+    }
+    
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The run finishes under its own wake lock, or resumes from the journal
+        return false;
+    }
+}
\ No newline at end of file
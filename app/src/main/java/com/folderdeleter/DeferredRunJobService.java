@@ -0,0 +1,210 @@
+package com.folderdeleter;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs scheduled deletions that were due while their RunConstraints did not
+// hold. The queue (folder -> deadline) lives in SettingsManager; one job
+// covers all of it, with JobScheduler waiting for charging and idle and an
+// override deadline at the earliest folder's deadline, when the run starts
+// whatever the conditions. Conditions JobScheduler cannot express (screen
+// off, an exact battery level) are checked when the job starts, and the run
+// re-checks all of them between folders, pausing and requeueing the rest
+// once they stop holding.
+public class DeferredRunJobService extends JobService {
+    
+    private static final String TAG = "DeferredRunJobService";
+    private static final int JOB_ID = 3003;
+    
+    // How soon conditions are looked at again after they were found unmet
+    private static final long RECHECK_MILLIS = 15 * 60 * 1000L;
+    
+    private ConstraintCheck activeCheck;
+    
+    // Queues folders whose run is due but whose conditions do not hold. A
+    // folder already queued keeps the earlier deadline.
+    public static void defer(Context context, List<String> folders, long deadline) {
+        SettingsManager settingsManager = new SettingsManager(context);
+        Map<String, Long> deferred = settingsManager.getDeferredRuns();
+        for (String folder : folders) {
+            Long queued = deferred.get(folder);
+            deferred.put(folder, queued != null ? Math.min(queued, deadline) : deadline);
+        }
+        settingsManager.setDeferredRuns(deferred);
+        Log.d(TAG, "Deferred " + folders.size() + " folders, " + deferred.size() + " waiting");
+        schedule(context, settingsManager, 0);
+    }
+    
+    // Gate for every run the app starts on its own (alarm, size threshold,
+    // catch-up): returns true if the run conditions hold now, and otherwise
+    // queues the folders for at most the maximum deferral and returns false.
+    // `idle` says whether the device is known to be idle.
+    public static boolean checkOrDefer(Context context, List<String> folders, boolean idle) {
+        RunConstraints constraints = new SettingsManager(context).getRunConstraints();
+        String unmet = constraints != null ? constraints.getUnmetReason(context, idle) : null;
+        if (unmet == null) {
+            return true;
+        }
+        Log.d(TAG, "Deferring " + folders.size() + " folders: " + unmet);
+        defer(context, folders, System.currentTimeMillis() + constraints.getMaxDeferralMillis());
+        return false;
+    }
+    
+    // For a run that passed checkOrDefer: pauses it once its conditions stop
+    // holding, or null if there are none
+    public static FolderManager.PauseCheck newPauseCheck(Context context) {
+        RunConstraints constraints = new SettingsManager(context).getRunConstraints();
+        return constraints != null ? new ConstraintCheck(context, constraints) : null;
+    }
+    
+    // Queues what a run paused by newPauseCheck left, with the deadline the
+    // run's folders had when it started
+    public static void deferRemaining(Context context, DeletionReport report) {
+        RunConstraints constraints = new SettingsManager(context).getRunConstraints();
+        if (report == null || report.getDeferredFolders().isEmpty() || constraints == null) {
+            return;
+        }
+        defer(context, report.getDeferredFolders(), report.getStartTime() + constraints.getMaxDeferralMillis());
+    }
+    
+    // Drops the queue, e.g. when scheduling is turned off
+    public static void cancel(Context context) {
+        new SettingsManager(context).setDeferredRuns(new HashMap<String, Long>());
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        jobScheduler.cancel(JOB_ID);
+    }
+    
+    private static void schedule(Context context, SettingsManager settingsManager, long delayMillis) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        Map<String, Long> deferred = settingsManager.getDeferredRuns();
+        if (deferred.isEmpty()) {
+            jobScheduler.cancel(JOB_ID);
+            return;
+        }
+        
+        long untilDeadline = Math.max(0, Collections.min(deferred.values()) - System.currentTimeMillis());
+        // A busy worker is waited out even past the deadline; otherwise the
+        // deadline wins over the delay
+        long latency = DeletionRunner.isRunInProgress() ? delayMillis : Math.min(delayMillis, untilDeadline);
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID, new ComponentName(context, DeferredRunJobService.class))
+            .setMinimumLatency(latency)
+            .setOverrideDeadline(Math.max(latency, untilDeadline))
+            .setPersisted(true);
+        RunConstraints constraints = settingsManager.getRunConstraints();
+        if (constraints != null) {
+            builder.setRequiresCharging(constraints.isRequireCharging());
+            builder.setRequiresDeviceIdle(constraints.isRequireIdle());
+            if (constraints.getMinBatteryPercent() > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // Coarse; the exact level is checked when the job starts
+                builder.setRequiresBatteryNotLow(true);
+            }
+        }
+        if (jobScheduler.schedule(builder.build()) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(TAG, "Failed to schedule deferred run");
+        }
+    }
+    
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final Context context = getApplicationContext();
+        WakeupStats.record(context, WakeupStats.EVENT_JOB_TICK);
+        final SettingsManager settingsManager = new SettingsManager(context);
+        final Map<String, Long> deferred = settingsManager.getDeferredRuns();
+        if (deferred.isEmpty()) {
+            return false;
+        }
+        if (DeletionRunner.isRunInProgress()) {
+            schedule(context, settingsManager, RECHECK_MILLIS);
+            return false;
+        }
+        
+        // Past the deadline the run goes ahead and is not paused either
+        boolean overdue = Collections.min(deferred.values()) <= System.currentTimeMillis();
+        RunConstraints constraints = settingsManager.getRunConstraints();
+        activeCheck = overdue ? null : new ConstraintCheck(context, constraints);
+        if (activeCheck != null && activeCheck.shouldPause()) {
+            schedule(context, settingsManager, RECHECK_MILLIS);
+            return false;
+        }
+        
+        List<String> folders = new ArrayList<>(deferred.keySet());
+        settingsManager.setDeferredRuns(new HashMap<String, Long>());
+        Log.d(TAG, "Running " + folders.size() + " deferred folders" + (overdue ? " at their deadline" : ""));
+        
+        // The job itself hosts the run, so the process stays up for it
+        boolean started = DeletionRunner.runAsync(context, folders, activeCheck, new DeletionRunner.Callback() {
+            @Override
+            public void onDeletionComplete(DeletionReport report) {
+                if (report != null && !report.getDeferredFolders().isEmpty()) {
+                    requeue(context, report.getDeferredFolders(), deferred);
+                }
+                NotificationHelper.showReportNotification(context, report);
+                jobFinished(params, false);
+            }
+        });
+        if (!started) {
+            requeue(context, folders, deferred);
+        }
+        return started;
+    }
+    
+    // Puts folders back with the deadlines they were queued with
+    private static void requeue(Context context, List<String> folders, Map<String, Long> deadlines) {
+        SettingsManager settingsManager = new SettingsManager(context);
+        Map<String, Long> deferred = settingsManager.getDeferredRuns();
+        for (String folder : folders) {
+            Long deadline = deadlines.get(folder);
+            if (deadline != null) {
+                Long queued = deferred.get(folder);
+                deferred.put(folder, queued != null ? Math.min(queued, deadline) : deadline);
+            }
+        }
+        settingsManager.setDeferredRuns(deferred);
+        schedule(context, settingsManager, RECHECK_MILLIS);
+    }
+    
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Charging or idle ended: the run pauses before its next folder and
+        // requeues the rest itself
+        if (activeCheck != null) {
+            activeCheck.stopped = true;
+        }
+        return false;
+    }
+    
+    // Pauses a run once its conditions stop holding. Idle counts as held
+    // until JobScheduler stops the job.
+    static class ConstraintCheck implements FolderManager.PauseCheck {
+        
+        private final Context context;
+        private final RunConstraints constraints;
+        volatile boolean stopped;
+        
+        ConstraintCheck(Context context, RunConstraints constraints) {
+            this.context = context;
+            this.constraints = constraints;
+        }
+        
+        @Override
+        public boolean shouldPause() {
+            String reason = stopped ? "job stopped"
+                : constraints != null ? constraints.getUnmetReason(context, true) : null;
+            if (reason != null) {
+                Log.d(TAG, "Run conditions not met: " + reason);
+            }
+            return reason != null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,240 @@
+package com.folderdeleter;
+
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// The deletable files found by one collection walk, for runs that delete
+// biggest-first under a time budget. A min-heap bounded to a fixed number
+// of entries holds the largest files; whatever does not fit is spilled to
+// disk in power-of-two size classes, so memory stays flat however many
+// files the walk sees and no file has to be walked or stat'ed twice.
+// Batches come back exactly ordered for the heap and ordered within a
+// factor of two for the spill.
+public class DeletionCandidates {
+    
+    private static final String TAG = "DeletionCandidates";
+    // One size class per bit of a file size
+    private static final int SIZE_CLASSES = 64;
+    
+    private static final Comparator<Candidate> BY_SIZE = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            return Long.compare(a.size, b.size);
+        }
+    };
+    
+    private final int capacity;
+    private final PriorityQueue<Candidate> heap;
+    private final File spillDir;
+    private final BufferedWriter[] spillWriters = new BufferedWriter[SIZE_CLASSES];
+    private long totalBytes;
+    private long totalCount;
+    // A failed write may leave a torn line, so none of the spill is trusted
+    private boolean spillFailed;
+    private boolean draining;
+    // Size class whose spill file is being read, counting down
+    private int readClass = SIZE_CLASSES;
+    private BufferedReader spillReader;
+    
+    // Files that do not fit the heap go to `spillDir`; without one they are
+    // dropped and left to a later pass
+    public DeletionCandidates(int capacity, File spillDir) {
+        this.capacity = Math.max(1, capacity);
+        this.heap = new PriorityQueue<>(this.capacity, BY_SIZE);
+        this.spillDir = spillDir;
+        if (spillDir != null) {
+            clearSpill();
+        }
+    }
+    
+    public static class Candidate {
+        
+        public final File file;
+        public final long size;
+        // Index of the selected folder the file belongs to
+        public final int folderIndex;
+        
+        Candidate(File file, long size, int folderIndex) {
+            this.file = file;
+            this.size = size;
+            this.folderIndex = folderIndex;
+        }
+    }
+    
+    // Called from every worker of a parallel walk
+    public synchronized void offer(File file, long size, int folderIndex) {
+        totalBytes += size;
+        totalCount++;
+        if (heap.size() < capacity) {
+            heap.add(new Candidate(file, size, folderIndex));
+        } else if (heap.peek().size < size) {
+            spill(heap.poll());
+            heap.add(new Candidate(file, size, folderIndex));
+        } else {
+            spill(new Candidate(file, size, folderIndex));
+        }
+    }
+    
+    // "size folderIndex path", one per line
+    private void spill(Candidate candidate) {
+        String path = candidate.file.getAbsolutePath();
+        if (spillDir == null || spillFailed || path.indexOf('\n') >= 0) {
+            // A name with a newline would not read back as itself
+            return;
+        }
+        
+        int sizeClass = sizeClass(candidate.size);
+        try {
+            BufferedWriter writer = spillWriters[sizeClass];
+            if (writer == null) {
+                spillDir.mkdirs();
+                writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(spillFile(sizeClass)), StandardCharsets.UTF_8));
+                spillWriters[sizeClass] = writer;
+            }
+            writer.write(candidate.size + "\t" + candidate.folderIndex + "\t" + path + "\n");
+        } catch (IOException e) {
+            Log.w(TAG, "Could not spill candidates, leaving them to the final pass", e);
+            spillFailed = true;
+        }
+    }
+    
+    private static int sizeClass(long size) {
+        return size > 0 ? 63 - Long.numberOfLeadingZeros(size) : 0;
+    }
+    
+    private File spillFile(int sizeClass) {
+        return new File(spillDir, "class" + sizeClass);
+    }
+    
+    // Bytes of every file offered
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+    
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+    
+    // The next at most `capacity` files, largest first; empty once every
+    // file has been returned. The first batch is the heap itself, later
+    // ones are read back from the largest size class down. Offering ends
+    // with the first call.
+    public synchronized List<Candidate> nextBatch() {
+        if (!draining) {
+            draining = true;
+            closeWriters();
+            List<Candidate> batch = new ArrayList<>(heap);
+            heap.clear();
+            Collections.sort(batch, Collections.reverseOrder(BY_SIZE));
+            return batch;
+        }
+        
+        List<Candidate> batch = new ArrayList<>();
+        try {
+            while (batch.size() < capacity) {
+                if (spillReader == null && !openNextClass()) {
+                    break;
+                }
+                String line = spillReader.readLine();
+                if (line == null) {
+                    spillReader.close();
+                    spillReader = null;
+                    spillFile(readClass).delete();
+                    continue;
+                }
+                Candidate candidate = parseLine(line);
+                if (candidate != null) {
+                    batch.add(candidate);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read spilled candidates, leaving them to the final pass", e);
+            close();
+        }
+        Collections.sort(batch, Collections.reverseOrder(BY_SIZE));
+        return batch;
+    }
+    
+    private boolean openNextClass() throws IOException {
+        if (spillDir == null || spillFailed) {
+            return false;
+        }
+        while (--readClass >= 0) {
+            File file = spillFile(readClass);
+            if (file.exists()) {
+                spillReader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static Candidate parseLine(String line) {
+        String[] parts = line.split("\t", 3);
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return new Candidate(new File(parts[2]), Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    // Drops whatever is left, on disk included
+    public synchronized void close() {
+        closeWriters();
+        if (spillReader != null) {
+            try {
+                spillReader.close();
+            } catch (IOException e) {
+                // Nothing left to read from it
+            }
+            spillReader = null;
+        }
+        readClass = -1;
+        heap.clear();
+        if (spillDir != null) {
+            clearSpill();
+        }
+    }
+    
+    private void closeWriters() {
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            if (spillWriters[i] != null) {
+                try {
+                    spillWriters[i].close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not finish spill file, leaving the spill to the final pass", e);
+                    spillFailed = true;
+                }
+                spillWriters[i] = null;
+            }
+        }
+    }
+    
+    // Also removes the spill of a run that was killed
+    private void clearSpill() {
+        File[] files = spillDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,255 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Append-only record of the work a deletion run has finished, so a run that
+// is killed midway can resume without repeating it. Only subtrees that were
+// fully processed but still exist (because something inside them could not
+// be removed) are recorded; deleted subtrees are already cheap to re-check.
+public class DeletionJournal {
+    
+    private static final String TAG = "DeletionJournal";
+    private static final String JOURNAL_FILE = "deletion.journal";
+    
+    private static final String ENTRY_RUN = "R";
+    private static final String ENTRY_FOLDER = "F";
+    private static final String ENTRY_SUBTREE = "S";
+    
+    // An interrupted run is resumed only by a run over the same folders that
+    // starts within this long; anything else starts fresh, since the
+    // folders it finished may have filled up again since
+    private static final long MAX_RESUME_AGE_MILLIS = 12 * 60 * 60 * 1000L;
+    
+    private final File journalFile;
+    private final int syncInterval;
+    
+    private final Map<String, Boolean> completedFolders = new HashMap<>();
+    private final Set<String> completedSubtrees = new HashSet<>();
+    
+    private FileOutputStream outputStream;
+    private BufferedWriter writer;
+    private int unsyncedEntries;
+    private boolean resumed;
+    
+    public DeletionJournal(Context context) {
+        this.journalFile = new File(context.getFilesDir(), JOURNAL_FILE);
+        this.syncInterval = Math.max(1, new SettingsManager(context).getJournalSyncInterval());
+    }
+    
+    // Loads the journal of an interrupted run over the same folders, if any,
+    // and opens it for appending
+    public synchronized void begin(List<String> folders) {
+        completedFolders.clear();
+        completedSubtrees.clear();
+        String runKey = runKey(folders);
+        long now = System.currentTimeMillis();
+        resumed = journalFile.exists() && load(runKey, now);
+        
+        try {
+            outputStream = new FileOutputStream(journalFile, resumed);
+            writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            if (!resumed) {
+                // "R <start> <folders>"; the folder list identifies the run
+                append(ENTRY_RUN + "\t" + now + "\t" + runKey);
+                sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open deletion journal", e);
+            closeQuietly();
+        }
+        
+        if (resumed) {
+            Log.d(TAG, "Resuming interrupted run: " + completedFolders.size() + " folders and "
+                + completedSubtrees.size() + " subtrees already done");
+        }
+    }
+    
+    public synchronized boolean isResumed() {
+        return resumed;
+    }
+    
+    public synchronized boolean isFolderCompleted(String folderPath) {
+        return completedFolders.containsKey(folderPath);
+    }
+    
+    public synchronized boolean getFolderResult(String folderPath) {
+        Boolean result = completedFolders.get(folderPath);
+        return result != null && result;
+    }
+    
+    public synchronized boolean isSubtreeCompleted(File dir) {
+        return !completedSubtrees.isEmpty() && completedSubtrees.contains(dir.getAbsolutePath());
+    }
+    
+    public synchronized void recordFolder(String folderPath, boolean success) {
+        completedFolders.put(folderPath, success);
+        append(ENTRY_FOLDER + "\t" + (success ? "1" : "0") + "\t" + folderPath);
+        // Folder boundaries are always checkpointed
+        sync();
+    }
+    
+    public synchronized void recordSubtree(File dir) {
+        String path = dir.getAbsolutePath();
+        if (completedSubtrees.add(path)) {
+            append(ENTRY_SUBTREE + "\t" + path);
+            if (unsyncedEntries >= syncInterval) {
+                sync();
+            }
+        }
+    }
+    
+    // Marks the run as complete; the next run starts from scratch
+    public synchronized void finish() {
+        closeQuietly();
+        if (journalFile.exists() && !journalFile.delete()) {
+            Log.w(TAG, "Could not remove deletion journal");
+        }
+        completedFolders.clear();
+        completedSubtrees.clear();
+        resumed = false;
+    }
+    
+    // Sorted, so the same folders give the same key in any order
+    private static String runKey(List<String> folders) {
+        List<String> sorted = new ArrayList<>(folders);
+        Collections.sort(sorted);
+        StringBuilder sb = new StringBuilder();
+        for (String folder : sorted) {
+            if (sb.length() > 0) {
+                sb.append('\t');
+            }
+            sb.append(folder);
+        }
+        return sb.toString();
+    }
+    
+    private boolean load(String runKey, long now) {
+        boolean valid = false;
+        
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            // Lines are applied one behind the reader so that a torn final
+            // entry from a crash mid-write is never trusted
+            String pending = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (pending != null) {
+                    valid |= applyEntry(pending, runKey, now);
+                }
+                pending = line;
+            }
+            if (pending != null && endsWithNewline()) {
+                valid |= applyEntry(pending, runKey, now);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read deletion journal, starting fresh", e);
+            valid = false;
+        }
+        
+        if (!valid) {
+            completedFolders.clear();
+            completedSubtrees.clear();
+        }
+        return valid;
+    }
+    
+    // Returns true for a run header of the same folders that is recent enough
+    private boolean applyEntry(String line, String runKey, long now) {
+        String[] parts = line.split("\t", 3);
+        if (ENTRY_RUN.equals(parts[0])) {
+            return isResumableHeader(parts, runKey, now);
+        } else if (ENTRY_FOLDER.equals(parts[0]) && parts.length == 3) {
+            completedFolders.put(parts[2], "1".equals(parts[1]));
+        } else if (ENTRY_SUBTREE.equals(parts[0]) && parts.length > 1) {
+            completedSubtrees.add(line.substring(ENTRY_SUBTREE.length() + 1));
+        }
+        return false;
+    }
+    
+    private boolean isResumableHeader(String[] parts, String runKey, long now) {
+        if (parts.length != 3 || !parts[2].equals(runKey)) {
+            Log.d(TAG, "Journal is from a run over other folders, discarding it");
+            return false;
+        }
+        try {
+            long age = now - Long.parseLong(parts[1]);
+            if (age >= 0 && age <= MAX_RESUME_AGE_MILLIS) {
+                return true;
+            }
+            Log.d(TAG, "Journal is " + age / 60000 + " minutes old, discarding it");
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Malformed journal header, discarding it");
+        }
+        return false;
+    }
+    
+    private boolean endsWithNewline() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "r")) {
+            long length = file.length();
+            if (length == 0) {
+                return false;
+            }
+            file.seek(length - 1);
+            return file.read() == '\n';
+        }
+    }
+    
+    private void append(String entry) {
+        if (writer == null || entry.indexOf('\n') >= 0) {
+            return;
+        }
+        
+        try {
+            writer.write(entry);
+            writer.newLine();
+            unsyncedEntries++;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not append to deletion journal", e);
+        }
+    }
+    
+    private void sync() {
+        if (writer == null) {
+            return;
+        }
+        
+        try {
+            writer.flush();
+            outputStream.getFD().sync();
+            unsyncedEntries = 0;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not sync deletion journal", e);
+        }
+    }
+    
+    private void closeQuietly() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing deletion journal", e);
+            }
+        }
+        writer = null;
+        outputStream = null;
+        unsyncedEntries = 0;
+    }
+}
\ No newline at end of file
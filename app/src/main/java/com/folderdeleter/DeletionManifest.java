@@ -0,0 +1,94 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+// What a dry run would delete, streamed to a file as the walk goes so memory
+// stays constant however many entries there are. One tab-separated line per
+// entry: type (F file, D directory, L symlink), size, mtime in millis,
+// path. Each selected folder starts with a "# path" line.
+public class DeletionManifest {
+    
+    private static final String TAG = "DeletionManifest";
+    private static final String MANIFEST_FILE = "deletion.manifest";
+    
+    private static final String ENTRY_FOLDER = "#";
+    private static final String ENTRY_FILE = "F";
+    private static final String ENTRY_DIRECTORY = "D";
+    private static final String ENTRY_SYMLINK = "L";
+    
+    private final File manifestFile;
+    private BufferedWriter writer;
+    
+    public DeletionManifest(Context context) {
+        this.manifestFile = new File(context.getFilesDir(), MANIFEST_FILE);
+    }
+    
+    public File getFile() {
+        return manifestFile;
+    }
+    
+    // Replaces the manifest of the previous dry run
+    public synchronized void begin() {
+        closeQuietly();
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(manifestFile, false), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open deletion manifest", e);
+        }
+    }
+    
+    public synchronized void beginFolder(String folderPath) {
+        append(ENTRY_FOLDER + " " + folderPath);
+    }
+    
+    public synchronized void addFile(File file, FileStat stat) {
+        append(ENTRY_FILE + "\t" + stat.size + "\t" + stat.lastModified + "\t" + file.getAbsolutePath());
+    }
+    
+    public synchronized void addDirectory(File dir, FileStat stat) {
+        append(ENTRY_DIRECTORY + "\t" + stat.size + "\t" + stat.lastModified + "\t" + dir.getAbsolutePath());
+    }
+    
+    // The link itself; its target is never touched
+    public synchronized void addSymlink(File link, FileStat stat) {
+        append(ENTRY_SYMLINK + "\t" + stat.size + "\t" + stat.lastModified + "\t" + link.getAbsolutePath());
+    }
+    
+    public synchronized void finish() {
+        closeQuietly();
+    }
+    
+    private void append(String entry) {
+        if (writer == null) {
+            return;
+        }
+        
+        try {
+            writer.write(entry);
+            writer.newLine();
+        } catch (IOException e) {
+            // Keep counting for the summary even if the manifest is incomplete
+            Log.w(TAG, "Could not append to deletion manifest, stopping it", e);
+            closeQuietly();
+        }
+    }
+    
+    private void closeQuietly() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing deletion manifest", e);
+            }
+        }
+        writer = null;
+    }
+}
\ No newline at end of file
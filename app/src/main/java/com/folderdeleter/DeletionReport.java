@@ -0,0 +1,453 @@
+package com.folderdeleter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Outcome of one deletion run, per folder and in total. Persisted as JSON
+// through SettingsManager so the UI can show the last run.
+public class DeletionReport {
+    
+    private static final int MAX_FAILURE_PATHS = 20;
+    
+    private final long startTime;
+    private long endTime;
+    private boolean success = true;
+    private boolean dryRun;
+    private long timeBudgetMillis;
+    private long reclaimableBytes;
+    private boolean budgetExhausted;
+    private double unlinkRate;
+    private double directoryOpRate;
+    private final List<FolderReport> folders = new ArrayList<>();
+    private final List<String> deferredFolders = new ArrayList<>();
+    
+    public DeletionReport(long startTime) {
+        this.startTime = startTime;
+    }
+    
+    public static class FolderReport {
+        
+        private final String path;
+        private final AtomicLong filesDeleted = new AtomicLong();
+        private final AtomicLong directoriesDeleted = new AtomicLong();
+        private final AtomicLong bytesReclaimed = new AtomicLong();
+        private final AtomicLong failureCount = new AtomicLong();
+        private final AtomicLong symlinksSkipped = new AtomicLong();
+        private final AtomicLong mountPointsSkipped = new AtomicLong();
+        private final AtomicLong walkNanos = new AtomicLong();
+        private final AtomicLong unlinkNanos = new AtomicLong();
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        private long elapsedMillis;
+        private boolean success;
+        private boolean staged;
+        
+        public FolderReport(String path) {
+            this.path = path;
+        }
+        
+        public void addFileDeleted(long bytes) {
+            filesDeleted.incrementAndGet();
+            bytesReclaimed.addAndGet(bytes);
+        }
+        
+        public void addDirectoryDeleted() {
+            directoriesDeleted.incrementAndGet();
+        }
+        
+        public void addFailure(String failedPath) {
+            if (failureCount.incrementAndGet() <= MAX_FAILURE_PATHS) {
+                failures.add(failedPath);
+            }
+        }
+        
+        // A symlink or mount point the walk did not descend into
+        public void addBoundarySkipped(int kind) {
+            if (kind == TreeWalker.BOUNDARY_SYMLINK) {
+                symlinksSkipped.incrementAndGet();
+            } else {
+                mountPointsSkipped.incrementAndGet();
+            }
+        }
+        
+        public void addWalkTime(long nanos) {
+            walkNanos.addAndGet(nanos);
+        }
+        
+        public void addUnlinkTime(long nanos) {
+            unlinkNanos.addAndGet(nanos);
+        }
+        
+        public void finish(boolean success, long elapsedMillis) {
+            this.success = success;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public void setStaged(boolean staged) {
+            this.staged = staged;
+        }
+        
+        public String getPath() {
+            return path;
+        }
+        
+        public long getFilesDeleted() {
+            return filesDeleted.get();
+        }
+        
+        public long getDirectoriesDeleted() {
+            return directoriesDeleted.get();
+        }
+        
+        public long getBytesReclaimed() {
+            return bytesReclaimed.get();
+        }
+        
+        public long getFailureCount() {
+            return failureCount.get();
+        }
+        
+        public long getSymlinksSkipped() {
+            return symlinksSkipped.get();
+        }
+        
+        public long getMountPointsSkipped() {
+            return mountPointsSkipped.get();
+        }
+        
+        public List<String> getFailures() {
+            return new ArrayList<>(failures);
+        }
+        
+        // Cumulative across workers, so it can exceed the elapsed time
+        public long getWalkTimeMillis() {
+            return walkNanos.get() / 1000000L;
+        }
+        
+        // Cumulative across workers, so it can exceed the elapsed time
+        public long getUnlinkTimeMillis() {
+            return unlinkNanos.get() / 1000000L;
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        
+        public boolean isSuccess() {
+            return success;
+        }
+        
+        public boolean isStaged() {
+            return staged;
+        }
+        
+        public double getFilesPerSecond() {
+            return elapsedMillis > 0 ? getFilesDeleted() * 1000.0 / elapsedMillis : 0;
+        }
+        
+        public double getBytesPerSecond() {
+            return elapsedMillis > 0 ? getBytesReclaimed() * 1000.0 / elapsedMillis : 0;
+        }
+        
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("path", path);
+            json.put("files", getFilesDeleted());
+            json.put("directories", getDirectoriesDeleted());
+            json.put("bytes", getBytesReclaimed());
+            json.put("failureCount", getFailureCount());
+            json.put("symlinksSkipped", getSymlinksSkipped());
+            json.put("mountPointsSkipped", getMountPointsSkipped());
+            json.put("walkNanos", walkNanos.get());
+            json.put("unlinkNanos", unlinkNanos.get());
+            json.put("elapsedMillis", elapsedMillis);
+            json.put("success", success);
+            json.put("staged", staged);
+            JSONArray failedPaths = new JSONArray();
+            for (String failure : getFailures()) {
+                failedPaths.put(failure);
+            }
+            json.put("failures", failedPaths);
+            return json;
+        }
+        
+        static FolderReport fromJson(JSONObject json) throws JSONException {
+            FolderReport report = new FolderReport(json.getString("path"));
+            report.filesDeleted.set(json.optLong("files"));
+            report.directoriesDeleted.set(json.optLong("directories"));
+            report.bytesReclaimed.set(json.optLong("bytes"));
+            report.failureCount.set(json.optLong("failureCount"));
+            report.symlinksSkipped.set(json.optLong("symlinksSkipped"));
+            report.mountPointsSkipped.set(json.optLong("mountPointsSkipped"));
+            report.walkNanos.set(json.optLong("walkNanos"));
+            report.unlinkNanos.set(json.optLong("unlinkNanos"));
+            report.elapsedMillis = json.optLong("elapsedMillis");
+            report.success = json.optBoolean("success");
+            report.staged = json.optBoolean("staged");
+            JSONArray failedPaths = json.optJSONArray("failures");
+            if (failedPaths != null) {
+                for (int i = 0; i < failedPaths.length(); i++) {
+                    report.failures.add(failedPaths.getString(i));
+                }
+            }
+            return report;
+        }
+    }
+    
+    public void addFolder(FolderReport folder) {
+        folders.add(folder);
+        if (!folder.isSuccess()) {
+            success = false;
+        }
+    }
+    
+    public void finish(long endTime, double unlinkRate, double directoryOpRate) {
+        this.endTime = endTime;
+        this.unlinkRate = unlinkRate;
+        this.directoryOpRate = directoryOpRate;
+    }
+    
+    public boolean isSuccess() {
+        return success;
+    }
+    
+    // A dry run's counts are what would have been deleted
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+    
+    public boolean isDryRun() {
+        return dryRun;
+    }
+    
+    // Set by runs that delete the largest files first within a time budget.
+    // The reclaimable total is what the first collection walk found.
+    public void setTimeBudget(long timeBudgetMillis, long reclaimableBytes) {
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.reclaimableBytes = reclaimableBytes;
+    }
+    
+    public void setBudgetExhausted(boolean budgetExhausted) {
+        this.budgetExhausted = budgetExhausted;
+    }
+    
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+    
+    public long getReclaimableBytes() {
+        return reclaimableBytes;
+    }
+    
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+    
+    // Folders not started because the run paused when its conditions
+    // stopped holding; they are queued to run later
+    public void setDeferredFolders(List<String> folderPaths) {
+        deferredFolders.clear();
+        deferredFolders.addAll(folderPaths);
+    }
+    
+    public List<String> getDeferredFolders() {
+        return Collections.unmodifiableList(deferredFolders);
+    }
+    
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+    
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    public long getElapsedMillis() {
+        return Math.max(0, endTime - startTime);
+    }
+    
+    public double getUnlinkRate() {
+        return unlinkRate;
+    }
+    
+    public double getDirectoryOpRate() {
+        return directoryOpRate;
+    }
+    
+    public List<FolderReport> getFolders() {
+        return folders;
+    }
+    
+    public long getTotalFilesDeleted() {
+        long total = 0;
+        for (FolderReport folder : folders) {
+            total += folder.getFilesDeleted();
+        }
+        return total;
+    }
+    
+    public long getTotalDirectoriesDeleted() {
+        long total = 0;
+        for (FolderReport folder : folders) {
+            total += folder.getDirectoriesDeleted();
+        }
+        return total;
+    }
+    
+    public long getTotalBytesReclaimed() {
+        long total = 0;
+        for (FolderReport folder : folders) {
+            total += folder.getBytesReclaimed();
+        }
+        return total;
+    }
+    
+    public long getTotalFailures() {
+        long total = 0;
+        for (FolderReport folder : folders) {
+            total += folder.getFailureCount();
+        }
+        return total;
+    }
+    
+    public double getFilesPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed > 0 ? getTotalFilesDeleted() * 1000.0 / elapsed : 0;
+    }
+    
+    public String getSummary() {
+        return String.format(Locale.US, "%d files, %d folders, %s %s in %.1f s",
+            getTotalFilesDeleted(), getTotalDirectoriesDeleted(), formatBytes(getTotalBytesReclaimed()),
+            dryRun ? "to free, walked" : "freed", getElapsedMillis() / 1000.0)
+            + (timeBudgetMillis > 0 ? " (" + formatBytes(reclaimableBytes) + " reclaimable"
+                + (budgetExhausted ? ", stopped at time budget)" : ")") : "")
+            + (!deferredFolders.isEmpty() ? ", paused with " + deferredFolders.size() + " folders left" : "")
+            + (getTotalFailures() > 0 ? ", " + getTotalFailures() + " failures" : "");
+    }
+    
+    public String getDetails() {
+        StringBuilder sb = new StringBuilder(getSummary());
+        if (dryRun) {
+            sb.append(String.format(Locale.US, "\nPreview only, nothing deleted. Walk: %.0f files/s",
+                getFilesPerSecond()));
+        } else {
+            sb.append(String.format(Locale.US, "\nThroughput: %.0f files/s (%.1f unlinks/s, %.1f dir ops/s)",
+                getFilesPerSecond(), unlinkRate, directoryOpRate));
+        }
+        if (timeBudgetMillis > 0) {
+            long reclaimed = getTotalBytesReclaimed();
+            sb.append(String.format(Locale.US, "\nLargest files first, %.0f s budget: %s of %s reclaimed (%.0f%%)%s",
+                timeBudgetMillis / 1000.0, formatBytes(reclaimed), formatBytes(reclaimableBytes),
+                reclaimableBytes > 0 ? reclaimed * 100.0 / reclaimableBytes : 100.0,
+                budgetExhausted ? ", rest left for the next run" : ""));
+        }
+        if (!deferredFolders.isEmpty()) {
+            sb.append("\nPaused when run conditions stopped holding; deferred:");
+            for (String folderPath : deferredFolders) {
+                sb.append("\n  ").append(folderPath);
+            }
+        }
+        
+        for (FolderReport folder : folders) {
+            sb.append("\n\n").append(folder.getPath());
+            if (folder.isStaged()) {
+                sb.append("\n  Staged for background purge");
+                continue;
+            }
+            sb.append(String.format(Locale.US, "\n  %d files, %d folders, %s",
+                folder.getFilesDeleted(), folder.getDirectoriesDeleted(), formatBytes(folder.getBytesReclaimed())));
+            sb.append(String.format(Locale.US, "\n  walk %d ms, unlink %d ms, %.0f files/s",
+                folder.getWalkTimeMillis(), folder.getUnlinkTimeMillis(), folder.getFilesPerSecond()));
+            if (folder.getSymlinksSkipped() > 0 || folder.getMountPointsSkipped() > 0) {
+                sb.append(String.format(Locale.US, "\n  not descended into: %d symlinks, %d mount points",
+                    folder.getSymlinksSkipped(), folder.getMountPointsSkipped()));
+            }
+            if (folder.getFailureCount() > 0) {
+                sb.append("\n  ").append(folder.getFailureCount()).append(" failures");
+                for (String failure : folder.getFailures()) {
+                    sb.append("\n    ").append(failure);
+                }
+            }
+        }
+        return sb.toString();
+    }
+    
+    public String toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("startTime", startTime);
+            json.put("endTime", endTime);
+            json.put("success", success);
+            json.put("dryRun", dryRun);
+            json.put("timeBudgetMillis", timeBudgetMillis);
+            json.put("reclaimableBytes", reclaimableBytes);
+            json.put("budgetExhausted", budgetExhausted);
+            json.put("unlinkRate", unlinkRate);
+            json.put("directoryOpRate", directoryOpRate);
+            JSONArray folderArray = new JSONArray();
+            for (FolderReport folder : folders) {
+                folderArray.put(folder.toJson());
+            }
+            json.put("folders", folderArray);
+            JSONArray deferredArray = new JSONArray();
+            for (String folderPath : deferredFolders) {
+                deferredArray.put(folderPath);
+            }
+            json.put("deferredFolders", deferredArray);
+            return json.toString();
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+    
+    public static DeletionReport fromJson(String value) {
+        if (value == null) {
+            return null;
+        }
+        
+        try {
+            JSONObject json = new JSONObject(value);
+            DeletionReport report = new DeletionReport(json.getLong("startTime"));
+            report.finish(json.optLong("endTime"), json.optDouble("unlinkRate", 0), json.optDouble("directoryOpRate", 0));
+            JSONArray folderArray = json.optJSONArray("folders");
+            if (folderArray != null) {
+                for (int i = 0; i < folderArray.length(); i++) {
+                    report.folders.add(FolderReport.fromJson(folderArray.getJSONObject(i)));
+                }
+            }
+            report.success = json.optBoolean("success");
+            report.dryRun = json.optBoolean("dryRun");
+            report.timeBudgetMillis = json.optLong("timeBudgetMillis");
+            report.reclaimableBytes = json.optLong("reclaimableBytes");
+            report.budgetExhausted = json.optBoolean("budgetExhausted");
+            JSONArray deferredArray = json.optJSONArray("deferredFolders");
+            if (deferredArray != null) {
+                for (int i = 0; i < deferredArray.length(); i++) {
+                    report.deferredFolders.add(deferredArray.getString(i));
+                }
+            }
+            return report;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+    
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KB", "MB", "GB", "TB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.US, "%.1f %s", value, units[unit]);
+    }
+}
\ No newline at end of file
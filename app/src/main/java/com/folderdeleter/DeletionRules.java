@@ -0,0 +1,315 @@
+package com.folderdeleter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Include/exclude rules inside a selected folder, one per line:
+//   +pattern   delete only what matches (if there is no include rule, everything may be deleted)
+//   -pattern   never delete what matches
+// A pattern is a glob over the path relative to the selected folder, with
+// * and ? inside a segment, ** across segments and | between alternatives,
+// e.g. "+*.tmp|*.log", "-*.pdf", "-*/Starred/*". Like .gitignore, a pattern
+// without a slash matches at any depth, a trailing slash matches
+// directories only, and a matching directory applies to its whole subtree.
+// A leading "*/" is read as "**/", so "-*/Starred/*" covers a Starred
+// directory at any depth; "/*/Starred/*" only one level down. Exclusions
+// win over inclusions.
+//
+// All patterns are compiled once into one trie over path segments, and
+// the walk carries the set of trie nodes reached for each directory. Every
+// entry is therefore matched with one step from its parent's state, not by
+// testing each rule against its full path, and an excluded directory is
+// skipped without ever being listed.
+public class DeletionRules {
+    
+    private static final int INCLUDE = 1;
+    private static final int EXCLUDE = 2;
+    private static final int INCLUDE_DIRECTORY = 4;
+    private static final int EXCLUDE_DIRECTORY = 8;
+    
+    private final List<String> lines;
+    private final Node root = new Node();
+    private final boolean hasIncludes;
+    private final State rootState;
+    
+    public DeletionRules(List<String> rules) {
+        this.lines = new ArrayList<>();
+        boolean includes = false;
+        for (String rule : rules) {
+            String line = rule.trim();
+            if (line.length() < 2 || (line.charAt(0) != '+' && line.charAt(0) != '-')) {
+                continue;
+            }
+            boolean include = line.charAt(0) == '+';
+            for (String pattern : line.substring(1).split("\\|")) {
+                if (addPattern(pattern.trim(), include)) {
+                    includes |= include;
+                }
+            }
+            lines.add(line);
+        }
+        this.hasIncludes = includes;
+        this.rootState = new State(closure(Arrays.asList(root)), false, false);
+    }
+    
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+    
+    // Serialized as one rule per line for SettingsManager
+    public String serialize() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(line);
+        }
+        return sb.toString();
+    }
+    
+    public static DeletionRules parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        return new DeletionRules(Arrays.asList(value.split("\n")));
+    }
+    
+    // Matching state of one directory on the walk. Immutable, so subtrees
+    // can be handed to other threads along with it.
+    public static class State {
+        
+        private final Node[] nodes;
+        private final boolean included;
+        private final boolean excluded;
+        
+        State(Node[] nodes, boolean included, boolean excluded) {
+            this.nodes = nodes;
+            this.included = included;
+            this.excluded = excluded;
+        }
+        
+        // True if nothing below this directory may be deleted, so the walk
+        // need not descend into it
+        public boolean isExcluded() {
+            return excluded;
+        }
+    }
+    
+    // State of the selected folder itself
+    public State getRootState() {
+        return rootState;
+    }
+    
+    public State enterDirectory(State parent, String name) {
+        if (parent.excluded) {
+            return parent;
+        }
+        Node[] nodes = step(parent.nodes, name);
+        int flags = terminalFlags(nodes, true);
+        return new State(nodes,
+            parent.included || (flags & INCLUDE) != 0,
+            (flags & EXCLUDE) != 0);
+    }
+    
+    public boolean isFileDeleted(State parent, String name) {
+        if (parent.excluded) {
+            return false;
+        }
+        if (parent.nodes.length == 0) {
+            // No rule can match anything deeper; only inherited inclusion counts
+            return parent.included || !hasIncludes;
+        }
+        int flags = terminalFlags(step(parent.nodes, name), false);
+        if ((flags & EXCLUDE) != 0) {
+            return false;
+        }
+        return !hasIncludes || parent.included || (flags & INCLUDE) != 0;
+    }
+    
+    // One pattern segment; children are keyed by literal name where possible
+    // so most steps are a hash lookup
+    private static class Node {
+        
+        final Map<String, Node> literals = new HashMap<>();
+        final List<Node> globs = new ArrayList<>();
+        Node anySegments;
+        String segment;
+        Pattern glob;
+        String suffix;
+        boolean isAnySegments;
+        int flags;
+        
+        boolean matches(String name) {
+            return suffix != null ? name.endsWith(suffix) : glob.matcher(name).matches();
+        }
+    }
+    
+    private boolean addPattern(String pattern, boolean include) {
+        boolean directoryOnly = pattern.endsWith("/");
+        if (pattern.endsWith("/**")) {
+            // "dir/**" is everything inside dir, which "dir/" already covers
+            pattern = pattern.substring(0, pattern.length() - 2);
+            directoryOnly = true;
+        }
+        
+        String trimmed = trimSlashes(pattern);
+        if (trimmed.isEmpty()) {
+            return false;
+        }
+        
+        List<String> segments = new ArrayList<>(Arrays.asList(trimmed.split("/+")));
+        if (!pattern.substring(0, pattern.length() - (directoryOnly ? 1 : 0)).contains("/")) {
+            // Unanchored: matches at any depth
+            segments.add(0, "**");
+        } else if (segments.get(0).equals("*") && !pattern.startsWith("/")) {
+            // "*/x" means "x in any folder"; "/*/x" keeps it one level down
+            segments.set(0, "**");
+        }
+        
+        Node node = root;
+        for (String segment : segments) {
+            node = child(node, segment);
+        }
+        if (include) {
+            node.flags |= directoryOnly ? INCLUDE_DIRECTORY : INCLUDE;
+        } else {
+            node.flags |= directoryOnly ? EXCLUDE_DIRECTORY : EXCLUDE;
+        }
+        return true;
+    }
+    
+    private static Node child(Node parent, String segment) {
+        if (segment.equals("**")) {
+            if (parent.anySegments == null) {
+                parent.anySegments = new Node();
+                parent.anySegments.isAnySegments = true;
+            }
+            return parent.anySegments;
+        }
+        
+        if (!isGlob(segment)) {
+            Node node = parent.literals.get(segment);
+            if (node == null) {
+                node = new Node();
+                parent.literals.put(segment, node);
+            }
+            return node;
+        }
+        
+        for (Node node : parent.globs) {
+            if (segment.equals(node.segment)) {
+                return node;
+            }
+        }
+        Node node = new Node();
+        node.segment = segment;
+        String rest = segment.substring(1);
+        if (segment.startsWith("*") && !isGlob(rest)) {
+            // "*.ext" is by far the most common form
+            node.suffix = rest;
+        }
+        node.glob = compileSegment(segment);
+        parent.globs.add(node);
+        return node;
+    }
+    
+    private static Node[] step(Node[] nodes, String name) {
+        List<Node> next = new ArrayList<>(nodes.length + 1);
+        for (Node node : nodes) {
+            if (node.isAnySegments) {
+                next.add(node);
+            }
+            Node literal = node.literals.get(name);
+            if (literal != null) {
+                next.add(literal);
+            }
+            for (Node glob : node.globs) {
+                if (glob.matches(name)) {
+                    next.add(glob);
+                }
+            }
+        }
+        return closure(next);
+    }
+    
+    // Adds the "**" successor of every node, since it can match zero segments
+    private static Node[] closure(List<Node> nodes) {
+        List<Node> result = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            addUnique(result, nodes.get(i));
+        }
+        for (int i = 0; i < result.size(); i++) {
+            Node anySegments = result.get(i).anySegments;
+            if (anySegments != null) {
+                addUnique(result, anySegments);
+            }
+        }
+        return result.toArray(new Node[0]);
+    }
+    
+    private static void addUnique(List<Node> nodes, Node node) {
+        // The sets stay tiny, so a linear scan beats hashing
+        for (Node existing : nodes) {
+            if (existing == node) {
+                return;
+            }
+        }
+        nodes.add(node);
+    }
+    
+    private static int terminalFlags(Node[] nodes, boolean isDirectory) {
+        int flags = 0;
+        for (Node node : nodes) {
+            flags |= node.flags;
+        }
+        if (isDirectory) {
+            if ((flags & INCLUDE_DIRECTORY) != 0) {
+                flags |= INCLUDE;
+            }
+            if ((flags & EXCLUDE_DIRECTORY) != 0) {
+                flags |= EXCLUDE;
+            }
+        }
+        return flags & (INCLUDE | EXCLUDE);
+    }
+    
+    private static boolean isGlob(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+    }
+    
+    private static Pattern compileSegment(String segment) {
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(segment.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < segment.length()) {
+            regex.append(Pattern.quote(segment.substring(literalStart)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+    
+    private static String trimSlashes(String pattern) {
+        int start = 0;
+        int end = pattern.length();
+        while (start < end && pattern.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && pattern.charAt(end - 1) == '/') {
+            end--;
+        }
+        return pattern.substring(start, end);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,330 @@
+package com.folderdeleter;
+
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.File;
+
+// Per-run state shared by the sequential walker and the parallel engine.
+// Every listing, unlink and rmdir of a run goes through here. A dry run
+// walks exactly the same way but records to a manifest instead of deleting;
+// a collection pass likewise feeds the files it would delete to a
+// DeletionCandidates heap.
+public class DeletionRun {
+    
+    private static final String TAG = "DeletionRun";
+    // How often a run asks its PauseCheck, which may look up the battery
+    // state; as often as DeletionThrottle refreshes its power state
+    private static final long PAUSE_CHECK_INTERVAL_MILLIS = 10 * 1000L;
+    
+    private final DeletionJournal journal;
+    private final DeletionThrottle throttle;
+    private final DeletionManifest manifest;
+    private final DeletionCandidates candidates;
+    private final long deadline;
+    private final long startTime;
+    private volatile DeletionReport.FolderReport folderReport;
+    private volatile int candidateFolder;
+    private volatile FolderManager.PauseCheck pauseCheck;
+    private volatile boolean paused;
+    private long lastPauseCheck;
+    
+    public DeletionRun(DeletionJournal journal, DeletionThrottle throttle) {
+        this.journal = journal;
+        this.throttle = throttle;
+        this.manifest = null;
+        this.candidates = null;
+        this.deadline = 0;
+        this.startTime = System.currentTimeMillis();
+    }
+    
+    // Dry run: nothing is journaled, throttled or deleted
+    public DeletionRun(DeletionManifest manifest) {
+        this.journal = null;
+        this.throttle = null;
+        this.manifest = manifest;
+        this.candidates = null;
+        this.deadline = 0;
+        this.startTime = System.currentTimeMillis();
+    }
+    
+    // Collection pass of a prioritized run: nothing is deleted, and walks
+    // stop listing once the deadline (SystemClock.elapsedRealtime) passes
+    public DeletionRun(DeletionCandidates candidates, long deadline) {
+        this.journal = null;
+        this.throttle = null;
+        this.manifest = null;
+        this.candidates = candidates;
+        this.deadline = deadline;
+        this.startTime = System.currentTimeMillis();
+    }
+    
+    public boolean isDryRun() {
+        return manifest != null || candidates != null;
+    }
+    
+    // Selected folder that files offered to the candidate heap belong to
+    public void setCandidateFolder(int folderIndex) {
+        this.candidateFolder = folderIndex;
+    }
+    
+    // Lets the run stop inside a folder, not just between folders: once the
+    // check says so, listings come back empty and unlinks fail, so every
+    // walk unwinds without removing or journaling anything further
+    public void setPauseCheck(FolderManager.PauseCheck pauseCheck) {
+        synchronized (this) {
+            lastPauseCheck = SystemClock.elapsedRealtime();
+        }
+        this.pauseCheck = pauseCheck;
+    }
+    
+    // True once the run has been paused
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    private boolean checkPause() {
+        FolderManager.PauseCheck check = pauseCheck;
+        if (paused || check == null) {
+            return paused;
+        }
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            if (now - lastPauseCheck < PAUSE_CHECK_INTERVAL_MILLIS) {
+                return false;
+            }
+            lastPauseCheck = now;
+        }
+        if (check.shouldPause()) {
+            Log.d(TAG, "Pausing run inside a folder");
+            paused = true;
+        }
+        return paused;
+    }
+    
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    public DeletionThrottle getThrottle() {
+        return throttle;
+    }
+    
+    // Metrics of the folder currently being processed, or null to stop recording
+    public void setFolderReport(DeletionReport.FolderReport folderReport) {
+        this.folderReport = folderReport;
+    }
+    
+    public boolean isSubtreeCompleted(File dir) {
+        return journal != null && journal.isSubtreeCompleted(dir);
+    }
+    
+    // A subtree left by a pause is not done, so it is not journaled
+    public void recordSubtree(File dir) {
+        if (journal != null && !paused) {
+            journal.recordSubtree(dir);
+        }
+    }
+    
+    // A directory inside a protected tree is never entered
+    public boolean isProtectedDirectory(File dir) {
+        if (ProtectedPaths.getInstance().isProtectedDirectory(dir)) {
+            Log.w(TAG, "Not entering protected directory: " + dir.getAbsolutePath());
+            return true;
+        }
+        return false;
+    }
+    
+    // Walks stop at symlinks and mount points. A full delete unlinks a
+    // symlink like a file, leaving its target alone; a mount point and, in an
+    // expiry pass, a symlink are kept. Either way the entry counts as skipped.
+    public boolean handleBoundary(File entry, int kind, boolean removeSymlink) {
+        DeletionReport.FolderReport report = folderReport;
+        if (report != null) {
+            report.addBoundarySkipped(kind);
+        }
+        
+        if (kind != TreeWalker.BOUNDARY_SYMLINK || !removeSymlink) {
+            Log.d(TAG, "Not descending into " + (kind == TreeWalker.BOUNDARY_SYMLINK ? "symlink " : "mount point ")
+                + entry.getAbsolutePath());
+            return true;
+        }
+        
+        if (isDryRun()) {
+            if (manifest != null) {
+                manifest.addSymlink(entry, FileStat.lstat(entry));
+            }
+            return true;
+        }
+        if (throttle != null) {
+            throttle.acquireUnlink();
+        }
+        boolean deleted = entry.delete();
+        if (!deleted && report != null) {
+            report.addFailure(entry.getAbsolutePath());
+        }
+        return logIfFailed(entry, deleted);
+    }
+    
+    public TreeWalker.DirectoryCursor openDirectory(File dir, int openStreams) {
+        if (candidates != null && SystemClock.elapsedRealtime() >= deadline) {
+            // Out of time: the walk sees no further entries and unwinds
+            return null;
+        }
+        if (checkPause()) {
+            return null;
+        }
+        if (throttle != null) {
+            throttle.acquireDirectoryOp();
+        }
+        
+        DeletionReport.FolderReport report = folderReport;
+        if (report == null) {
+            return TreeWalker.open(dir, openStreams);
+        }
+        
+        long start = System.nanoTime();
+        TreeWalker.DirectoryCursor cursor = TreeWalker.open(dir, openStreams);
+        report.addWalkTime(System.nanoTime() - start);
+        return cursor != null ? new TimedCursor(cursor, report) : null;
+    }
+    
+    // `stat` is the walker's stat of the file; nothing here stats it again
+    public boolean deleteFile(File file, FileStat stat) {
+        if (candidates != null) {
+            if (SystemClock.elapsedRealtime() >= deadline) {
+                // Stops the walk even inside one huge directory
+                return false;
+            }
+            candidates.offer(file, stat.size, candidateFolder);
+            return true;
+        }
+        if (manifest != null) {
+            manifest.addFile(file, stat);
+            DeletionReport.FolderReport report = folderReport;
+            if (report != null) {
+                report.addFileDeleted(stat.size);
+            }
+            return true;
+        }
+        return unlink(file, stat.size);
+    }
+    
+    // Deletes a file collected earlier, with the size recorded then
+    public boolean deleteCandidate(DeletionCandidates.Candidate candidate) {
+        return unlink(candidate.file, candidate.size);
+    }
+    
+    private boolean unlink(File file, long size) {
+        if (checkPause()) {
+            // Stops the walk even inside one huge directory
+            return false;
+        }
+        if (throttle != null) {
+            throttle.acquireUnlink();
+        }
+        
+        DeletionReport.FolderReport report = folderReport;
+        if (report == null) {
+            return logIfFailed(file, file.delete());
+        }
+        
+        long start = System.nanoTime();
+        boolean deleted = file.delete();
+        report.addUnlinkTime(System.nanoTime() - start);
+        
+        if (deleted) {
+            report.addFileDeleted(size);
+        } else {
+            report.addFailure(file.getAbsolutePath());
+        }
+        return logIfFailed(file, deleted);
+    }
+    
+    public boolean deleteDirectory(File dir) {
+        if (candidates != null) {
+            return true;
+        }
+        if (manifest != null) {
+            manifest.addDirectory(dir, FileStat.of(dir));
+            DeletionReport.FolderReport report = folderReport;
+            if (report != null) {
+                report.addDirectoryDeleted();
+            }
+            return true;
+        }
+        
+        if (paused) {
+            // Not emptied, and not a failure either
+            return false;
+        }
+        boolean deleted = removeDirectory(dir);
+        DeletionReport.FolderReport report = folderReport;
+        if (report != null && !deleted) {
+            report.addFailure(dir.getAbsolutePath());
+        }
+        return logIfFailed(dir, deleted);
+    }
+    
+    // For pruning: a directory that still holds kept files is not an error
+    public boolean deleteDirectoryIfEmpty(File dir) {
+        if (isDryRun()) {
+            // Whether it would end up empty depends on what the policy keeps,
+            // so a dry run does not predict pruned directories
+            return false;
+        }
+        if (paused) {
+            return false;
+        }
+        return removeDirectory(dir);
+    }
+    
+    private boolean removeDirectory(File dir) {
+        if (throttle != null) {
+            throttle.acquireDirectoryOp();
+        }
+        
+        DeletionReport.FolderReport report = folderReport;
+        if (report == null) {
+            return dir.delete();
+        }
+        
+        long start = System.nanoTime();
+        boolean deleted = dir.delete();
+        report.addUnlinkTime(System.nanoTime() - start);
+        if (deleted) {
+            report.addDirectoryDeleted();
+        }
+        return deleted;
+    }
+    
+    private boolean logIfFailed(File file, boolean deleted) {
+        if (!deleted) {
+            Log.w(TAG, "Could not delete file: " + file.getAbsolutePath());
+        }
+        return deleted;
+    }
+    
+    private static class TimedCursor implements TreeWalker.DirectoryCursor {
+        
+        private final TreeWalker.DirectoryCursor cursor;
+        private final DeletionReport.FolderReport report;
+        
+        TimedCursor(TreeWalker.DirectoryCursor cursor, DeletionReport.FolderReport report) {
+            this.cursor = cursor;
+            this.report = report;
+        }
+        
+        @Override
+        public File next() {
+            long start = System.nanoTime();
+            File child = cursor.next();
+            report.addWalkTime(System.nanoTime() - start);
+            return child;
+        }
+        
+        @Override
+        public void close() {
+            cursor.close();
+        }
+    }
+}
\ No newline at end of file
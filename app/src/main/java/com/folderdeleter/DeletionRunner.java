@@ -0,0 +1,143 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class DeletionRunner {
+    
+    private static final String TAG = "DeletionRunner";
+    
+    // Safety cap only; the lock is released as soon as the run finishes
+    private static final long MAX_RUN_WAKE_LOCK_MILLIS = 3 * 60 * 60 * 1000L;
+    
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final AtomicBoolean runInProgress = new AtomicBoolean(false);
+    
+    public interface Callback {
+        // Called on the main thread once the run has finished; the report is
+        // null if the run failed before producing one
+        void onDeletionComplete(DeletionReport report);
+    }
+    
+    // What one pass of the worker does before staged folders are purged
+    private interface Work {
+        DeletionReport run(FolderManager folderManager);
+    }
+    
+    public static boolean isRunInProgress() {
+        return runInProgress.get();
+    }
+    
+    // Queues a deletion run on the worker thread. Returns false if a run is
+    // already in progress, in which case the callback is not invoked.
+    public static boolean runAsync(Context context, final Callback callback) {
+        return runAsync(context, null, callback);
+    }
+    
+    // As above, limited to the given folders; null means all selected folders
+    public static boolean runAsync(Context context, List<String> folders, final Callback callback) {
+        return runAsync(context, folders, null, callback);
+    }
+    
+    // As above; the run pauses between folders once the check says so
+    public static boolean runAsync(final Context context, List<String> folders,
+            final FolderManager.PauseCheck pauseCheck, final Callback callback) {
+        final List<String> targetFolders = folders != null ? new ArrayList<>(folders) : null;
+        return submit(context, new Work() {
+            @Override
+            public DeletionReport run(FolderManager folderManager) {
+                folderManager.setPauseCheck(pauseCheck);
+                DeletionReport report = targetFolders != null
+                    ? folderManager.runDeletion(targetFolders)
+                    : folderManager.runDeletion();
+                SettingsManager settingsManager = new SettingsManager(context);
+                settingsManager.setLastDeletionTime(report.getStartTime());
+                DeletionSchedule.recordRuns(settingsManager, report, Calendar.getInstance());
+                return report;
+            }
+        }, true, callback);
+    }
+    
+    // Only purges folders left staged, e.g. by a run cut short by a reboot.
+    // The callback gets a null report.
+    public static boolean purgeAsync(Context context, final Callback callback) {
+        return submit(context, new Work() {
+            @Override
+            public DeletionReport run(FolderManager folderManager) {
+                return null;
+            }
+        }, false, callback);
+    }
+    
+    // Staged folders are purged on the worker under the pass's wake lock,
+    // before the pass counts as finished, so nothing is left deleting once
+    // the host service or job has stopped
+    private static boolean submit(Context context, final Work work, final boolean rearm, final Callback callback) {
+        if (!runInProgress.compareAndSet(false, true)) {
+            Log.w(TAG, "Deletion run already in progress, ignoring request");
+            return false;
+        }
+        
+        final Context appContext = context.getApplicationContext();
+        PowerManager powerManager = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+        final PowerManager.WakeLock wakeLock = powerManager.newWakeLock(
+            PowerManager.PARTIAL_WAKE_LOCK, "FolderDeleter:DeletionRunWakeLock");
+        wakeLock.setReferenceCounted(false);
+        wakeLock.acquire(MAX_RUN_WAKE_LOCK_MILLIS);
+        final long acquiredAt = SystemClock.elapsedRealtime();
+        WakeupStats.record(appContext, WakeupStats.EVENT_WAKE_LOCK_ACQUIRED);
+        
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                DeletionReport report = null;
+                long startTime = System.currentTimeMillis();
+                
+                try {
+                    FolderManager folderManager = new FolderManager(appContext);
+                    report = work.run(folderManager);
+                    folderManager.purgeStagedFolders();
+                } catch (Exception e) {
+                    Log.e(TAG, "Deletion run failed", e);
+                } finally {
+                    // Always re-arm the alarm, even if the run threw
+                    if (rearm) {
+                        new AlarmScheduler(appContext).scheduleNextDeletion();
+                    }
+                    runInProgress.set(false);
+                    if (wakeLock.isHeld()) {
+                        wakeLock.release();
+                    }
+                    // Counted even if the safety timeout already released it
+                    long heldMillis = Math.min(SystemClock.elapsedRealtime() - acquiredAt, MAX_RUN_WAKE_LOCK_MILLIS);
+                    WakeupStats.getInstance(appContext).recordWakeLockReleased(heldMillis);
+                }
+                
+                Log.d(TAG, "Deletion run finished in " + (System.currentTimeMillis() - startTime) + " ms");
+                
+                final DeletionReport result = report;
+                if (callback != null) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onDeletionComplete(result);
+                        }
+                    });
+                }
+            }
+        });
+        
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.folderdeleter;
+
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Next deadline of every selected folder, ordered earliest first. Only the
+// head is ever armed as an alarm; when it fires, every folder due within
+// BATCH_WINDOW_MILLIS of it joins the same run, so folders on similar
+// schedules wake the device once rather than once each.
+//
+// Deadlines that passed while no alarm could fire (device off, app stopped)
+// are handled by the catch-up policy: all of a folder's missed runs become a
+// single run right away, or wait for the next idle and charging window
+// (CatchUpJobService), or are skipped. Missed runs older than the maximum
+// lateness are always skipped. Everything is computed from the stored last
+// runs and the given time, so a schedule can be replayed with a fake clock.
+//
+// A folder's last run is only recorded once a run over it has finished
+// (recordRuns), so a run that is killed or paused leaves the folder due.
+// Folders waiting in the deferred-run queue are left to that queue.
+public class DeletionSchedule {
+    
+    private static final String TAG = "DeletionSchedule";
+    
+    // Folders due this soon after the earliest deadline run with it
+    public static final long BATCH_WINDOW_MILLIS = 10 * 60 * 1000L;
+    
+    public static final int CATCH_UP_COALESCE = 0;
+    public static final int CATCH_UP_WHEN_IDLE = 1;
+    public static final int CATCH_UP_SKIP = 2;
+    
+    // A deadline passed by less than this was not missed, just fired late
+    private static final long MISSED_GRACE_MILLIS = BATCH_WINDOW_MILLIS;
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    
+    private static final Comparator<Deadline> BY_TIME = new Comparator<Deadline>() {
+        @Override
+        public int compare(Deadline a, Deadline b) {
+            return Long.compare(a.time, b.time);
+        }
+    };
+    
+    private final Settings settings;
+    private final Calendar calendar;
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>(11, BY_TIME);
+    private final List<Deadline> deferred = new ArrayList<>();
+    
+    // What the schedule reads and records; SettingsManager in the app
+    public interface Settings {
+        List<String> getSelectedFolders();
+        FolderSchedule getEffectiveSchedule(String folderPath);
+        long getFolderLastRun(String folderPath);
+        void setFolderLastRun(String folderPath, long timestamp);
+        int getCatchUpPolicy();
+        int getCatchUpMaxLatenessHours();
+        // Folders waiting for their run conditions, see DeferredRunJobService
+        Map<String, Long> getDeferredRuns();
+    }
+    
+    public static class Deadline {
+        
+        public final String folderPath;
+        public final long time;
+        
+        Deadline(String folderPath, long time) {
+            this.folderPath = folderPath;
+            this.time = time;
+        }
+    }
+    
+    public DeletionSchedule(Settings settings, long now) {
+        this(settings, now, Calendar.getInstance());
+    }
+    
+    public DeletionSchedule(Settings settings, long now, Calendar calendar) {
+        this.settings = settings;
+        this.calendar = calendar;
+        int policy = settings.getCatchUpPolicy();
+        long maxLateness = settings.getCatchUpMaxLatenessHours() * HOUR_MILLIS;
+        Map<String, Long> waiting = settings.getDeferredRuns();
+        
+        for (String folderPath : settings.getSelectedFolders()) {
+            if (waiting.containsKey(folderPath)) {
+                // Runs by its deferral deadline at the latest
+                continue;
+            }
+            FolderSchedule schedule = settings.getEffectiveSchedule(folderPath);
+            long lastRun = settings.getFolderLastRun(folderPath);
+            if (lastRun <= 0 || lastRun > now) {
+                // Never run (or the clock went back): nothing can have been missed
+                addDeadline(folderPath, schedule.nextFireTime(lastRun, now, calendar));
+                continue;
+            }
+            
+            long first = schedule.nextFireTime(lastRun, lastRun, calendar);
+            if (first < 0 || first > now - MISSED_GRACE_MILLIS) {
+                addDeadline(folderPath, first);
+                continue;
+            }
+            
+            // Only the latest missed run decides lateness: any occurrence
+            // within the allowed lateness means the folder is caught up
+            long upcoming = schedule.nextFireTime(lastRun, now, calendar);
+            boolean recent = maxLateness <= 0
+                || schedule.nextFireTime(lastRun, Math.max(lastRun, now - maxLateness), calendar) <= now;
+            if (!recent || policy == CATCH_UP_SKIP) {
+                Log.d(TAG, "Skipping missed runs of " + folderPath + " since " + new Date(first));
+                addDeadline(folderPath, upcoming);
+            } else if (policy == CATCH_UP_WHEN_IDLE) {
+                // The regular deadline still stands in case no idle window
+                // comes first; running then also clears the missed run
+                deferred.add(new Deadline(folderPath, first));
+                addDeadline(folderPath, upcoming);
+            } else {
+                // Every missed run collapses into one, due now
+                addDeadline(folderPath, now);
+            }
+        }
+    }
+    
+    private void addDeadline(String folderPath, long time) {
+        if (time >= 0) {
+            queue.add(new Deadline(folderPath, time));
+        }
+    }
+    
+    // Earliest deadline, or null if no folder is scheduled
+    public Deadline peek() {
+        return queue.peek();
+    }
+    
+    // Whether missed runs are waiting for an idle window
+    public boolean hasDeferred() {
+        return !deferred.isEmpty();
+    }
+    
+    // Removes and returns the folders one alarm fired at `now` covers: all
+    // that are overdue or due within the batch window. Nothing is recorded;
+    // within this schedule each counts as run at its deadline (or now, if
+    // later), so peek() then gives the alarm after this one.
+    public List<String> pollDue(long now) {
+        List<String> due = new ArrayList<>();
+        List<Deadline> polled = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().time <= now + BATCH_WINDOW_MILLIS) {
+            Deadline deadline = queue.poll();
+            polled.add(deadline);
+            due.add(deadline.folderPath);
+        }
+        for (Deadline deadline : polled) {
+            long runTime = Math.max(now, deadline.time);
+            FolderSchedule schedule = settings.getEffectiveSchedule(deadline.folderPath);
+            addDeadline(deadline.folderPath, schedule.nextFireTime(runTime, runTime, calendar));
+        }
+        return due;
+    }
+    
+    // Removes and returns the folders whose missed runs were waiting for an
+    // idle window
+    public List<String> pollDeferred(long now) {
+        List<String> due = new ArrayList<>();
+        for (Deadline deadline : deferred) {
+            due.add(deadline.folderPath);
+        }
+        deferred.clear();
+        return due;
+    }
+    
+    // Records the folders a finished run got through, which is where their
+    // next deadlines are counted from. Folders it deferred are still due. A
+    // run that started up to the batch window early covered the deadline it
+    // was batched with, so that deadline is recorded instead of the start.
+    public static void recordRuns(Settings settings, DeletionReport report, Calendar calendar) {
+        long startTime = report.getStartTime();
+        for (DeletionReport.FolderReport folder : report.getFolders()) {
+            String folderPath = folder.getPath();
+            if (report.getDeferredFolders().contains(folderPath)) {
+                continue;
+            }
+            FolderSchedule schedule = settings.getEffectiveSchedule(folderPath);
+            long next = schedule.nextFireTime(settings.getFolderLastRun(folderPath), startTime, calendar);
+            boolean batched = next >= 0 && next <= startTime + BATCH_WINDOW_MILLIS;
+            settings.setFolderLastRun(folderPath, batched ? next : startTime);
+        }
+    }
+}
\ No newline at end of file
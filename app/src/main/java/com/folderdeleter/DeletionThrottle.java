@@ -0,0 +1,137 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+// Rate limits unlinks and directory operations so a large run does not
+// starve foreground I/O on slow eMMC storage. The budget is lifted while the
+// screen is off or the device is charging and reapplied otherwise.
+public class DeletionThrottle {
+    
+    private static final String TAG = "DeletionThrottle";
+    private static final long POWER_STATE_REFRESH_MILLIS = 10 * 1000L;
+    
+    private final Context context;
+    private final TokenBucket unlinkBucket;
+    private final TokenBucket directoryBucket;
+    private final long startTime;
+    
+    private volatile boolean throttled = true;
+    private long lastPowerStateCheck;
+    private long unlinkCount;
+    private long directoryOpCount;
+    
+    public DeletionThrottle(Context context) {
+        SettingsManager settingsManager = new SettingsManager(context);
+        this.context = context.getApplicationContext();
+        this.unlinkBucket = new TokenBucket(settingsManager.getThrottleUnlinksPerSecond());
+        this.directoryBucket = new TokenBucket(settingsManager.getThrottleDirectoryOpsPerSecond());
+        this.startTime = SystemClock.elapsedRealtime();
+        refreshPowerState(startTime);
+    }
+    
+    public void acquireUnlink() {
+        synchronized (this) {
+            unlinkCount++;
+        }
+        if (isThrottled()) {
+            unlinkBucket.acquire();
+        }
+    }
+    
+    public void acquireDirectoryOp() {
+        synchronized (this) {
+            directoryOpCount++;
+        }
+        if (isThrottled()) {
+            directoryBucket.acquire();
+        }
+    }
+    
+    public synchronized double getEffectiveUnlinkRate() {
+        return rate(unlinkCount);
+    }
+    
+    public synchronized double getEffectiveDirectoryOpRate() {
+        return rate(directoryOpCount);
+    }
+    
+    private double rate(long count) {
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        return elapsed > 0 ? count * 1000.0 / elapsed : 0;
+    }
+    
+    private boolean isThrottled() {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            if (now - lastPowerStateCheck >= POWER_STATE_REFRESH_MILLIS) {
+                refreshPowerState(now);
+            }
+        }
+        return throttled;
+    }
+    
+    private void refreshPowerState(long now) {
+        lastPowerStateCheck = now;
+        
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        boolean screenOn = powerManager == null || powerManager.isInteractive();
+        
+        boolean wasThrottled = throttled;
+        throttled = screenOn && !isCharging();
+        if (throttled != wasThrottled) {
+            Log.d(TAG, throttled ? "Device in use on battery, throttling deletion" : "Running deletion at full speed");
+        }
+    }
+    
+    private boolean isCharging() {
+        Intent batteryStatus = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+    
+    private static class TokenBucket {
+        
+        private final double ratePerMilli;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+        
+        // A rate of 0 or less disables the bucket
+        TokenBucket(int ratePerSecond) {
+            this.ratePerMilli = ratePerSecond / 1000.0;
+            this.capacity = Math.max(1, ratePerSecond);
+            this.tokens = capacity;
+            this.lastRefill = SystemClock.elapsedRealtime();
+        }
+        
+        void acquire() {
+            if (ratePerMilli <= 0) {
+                return;
+            }
+            
+            long waitMillis;
+            synchronized (this) {
+                long now = SystemClock.elapsedRealtime();
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerMilli);
+                lastRefill = now;
+                
+                // Reserve the token up front so concurrent workers queue behind each other
+                tokens -= 1;
+                waitMillis = tokens < 0 ? (long) Math.ceil(-tokens / ratePerMilli) : 0;
+            }
+            
+            if (waitMillis > 0) {
+                try {
+                    Thread.sleep(waitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
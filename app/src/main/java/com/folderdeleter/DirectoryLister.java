@@ -0,0 +1,124 @@
+package com.folderdeleter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Lists the visible subfolders of a directory on a background thread and
+// hands them to the main thread in sorted pages, so huge directories start
+// showing entries straight away instead of blocking the UI
+public class DirectoryLister {
+    
+    private static final int PAGE_SIZE = 100;
+    
+    // A partial page is flushed after this long so slow storage still shows progress
+    private static final long MAX_PAGE_DELAY_MILLIS = 150;
+    
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    public interface Callback {
+        // Called on the main thread with the next page of paths, sorted
+        void onPage(List<String> folderPaths);
+        
+        // Called on the main thread once the directory has been fully listed
+        void onComplete(int folderCount);
+    }
+    
+    public static class Listing {
+        
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private Future<?> future;
+        
+        // Safe to call from the main thread at any time; no callback is
+        // delivered once this returns
+        public void cancel() {
+            cancelled.set(true);
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+        
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+    
+    public Listing list(final File dir, final Callback callback) {
+        final Listing listing = new Listing();
+        
+        listing.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                TreeWalker.DirectoryCursor cursor = TreeWalker.open(dir);
+                int folderCount = 0;
+                
+                if (cursor != null) {
+                    try {
+                        List<String> page = new ArrayList<>(PAGE_SIZE);
+                        long lastFlush = SystemClock.uptimeMillis();
+                        File child;
+                        
+                        while (!listing.isCancelled() && (child = cursor.next()) != null) {
+                            if (!FolderTree.isVisibleFolder(child)) {
+                                continue;
+                            }
+                            page.add(child.getAbsolutePath());
+                            folderCount++;
+                            
+                            if (page.size() >= PAGE_SIZE
+                                    || SystemClock.uptimeMillis() - lastFlush >= MAX_PAGE_DELAY_MILLIS) {
+                                deliverPage(listing, page, callback);
+                                page = new ArrayList<>(PAGE_SIZE);
+                                lastFlush = SystemClock.uptimeMillis();
+                            }
+                        }
+                        
+                        if (!page.isEmpty()) {
+                            deliverPage(listing, page, callback);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                
+                final int count = folderCount;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!listing.isCancelled()) {
+                            callback.onComplete(count);
+                        }
+                    }
+                });
+            }
+        });
+        
+        return listing;
+    }
+    
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    private void deliverPage(final Listing listing, final List<String> page, final Callback callback) {
+        // Sort off the main thread; the receiver only has to merge
+        Collections.sort(page, String.CASE_INSENSITIVE_ORDER);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!listing.isCancelled()) {
+                    callback.onPage(page);
+                }
+            }
+        });
+    }
+}
\ No newline at end of file
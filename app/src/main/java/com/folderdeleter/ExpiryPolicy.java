@@ -0,0 +1,109 @@
+package com.folderdeleter;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Selects which files inside a folder are deleted. Every configured
+// criterion has to match; criteria left at 0 or empty are ignored.
+public class ExpiryPolicy {
+    
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long MEGABYTE = 1024 * 1024L;
+    
+    private final int maxAgeDays;
+    private final long minSizeMb;
+    private final Set<String> extensions;
+    
+    public ExpiryPolicy(int maxAgeDays, long minSizeMb, Set<String> extensions) {
+        this.maxAgeDays = Math.max(0, maxAgeDays);
+        this.minSizeMb = Math.max(0, minSizeMb);
+        this.extensions = new HashSet<>();
+        for (String extension : extensions) {
+            String normalized = normalizeExtension(extension);
+            if (!normalized.isEmpty()) {
+                this.extensions.add(normalized);
+            }
+        }
+    }
+    
+    public int getMaxAgeDays() {
+        return maxAgeDays;
+    }
+    
+    public long getMinSizeMb() {
+        return minSizeMb;
+    }
+    
+    public Set<String> getExtensions() {
+        return extensions;
+    }
+    
+    public boolean isEmpty() {
+        return maxAgeDays == 0 && minSizeMb == 0 && extensions.isEmpty();
+    }
+    
+    // `stat` is the walker's stat of the file, which covers both the age
+    // and the size check
+    public boolean matches(File file, FileStat stat, long now) {
+        if (!extensions.isEmpty() && !extensions.contains(getExtension(file.getName()))) {
+            return false;
+        }
+        
+        if (maxAgeDays == 0 && minSizeMb == 0) {
+            return true;
+        }
+        
+        if (maxAgeDays > 0 && now - stat.lastModified < maxAgeDays * DAY_MILLIS) {
+            return false;
+        }
+        return minSizeMb == 0 || stat.size >= minSizeMb * MEGABYTE;
+    }
+    
+    // Serialized as "days|megabytes|ext1,ext2" for SettingsManager
+    public String serialize() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(maxAgeDays).append('|').append(minSizeMb).append('|');
+        boolean first = true;
+        for (String extension : extensions) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append(extension);
+            first = false;
+        }
+        return sb.toString();
+    }
+    
+    public static ExpiryPolicy parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        
+        String[] parts = value.split("\\|", -1);
+        if (parts.length != 3) {
+            return null;
+        }
+        
+        try {
+            Set<String> extensions = new HashSet<>();
+            for (String extension : parts[2].split(",")) {
+                extensions.add(extension);
+            }
+            return new ExpiryPolicy(Integer.parseInt(parts[0]), Long.parseLong(parts[1]), extensions);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static String getExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+    
+    private static String normalizeExtension(String extension) {
+        String trimmed = extension.trim().toLowerCase(Locale.ROOT);
+        return trimmed.startsWith(".") ? trimmed.substring(1) : trimmed;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.folderdeleter;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import java.io.File;
+
+// Size and modification time from a single stat() call, instead of the two
+// separate syscalls behind File.length() and File.lastModified(). lstat()
+// also tells walkers whether an entry is a symlink and which device it is
+// on, so they can stay inside the tree they were given.
+public class FileStat {
+    
+    public static final long UNKNOWN_DEVICE = -1;
+    
+    private static final int TYPE_OTHER = 0;
+    private static final int TYPE_DIRECTORY = 1;
+    private static final int TYPE_SYMLINK = 2;
+    
+    public final long size;
+    public final long lastModified;
+    public final long device;
+    private final int type;
+    
+    private FileStat(long size, long lastModified, long device, int type) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.device = device;
+        this.type = type;
+    }
+    
+    // Follows symlinks
+    public static FileStat of(File file) {
+        try {
+            return from(Os.stat(file.getPath()));
+        } catch (ErrnoException e) {
+            return new FileStat(file.length(), file.lastModified(), UNKNOWN_DEVICE,
+                file.isDirectory() ? TYPE_DIRECTORY : TYPE_OTHER);
+        }
+    }
+    
+    // Describes a symlink itself rather than its target. If lstat fails the
+    // entry is reported as a plain file, so a walker never descends into it.
+    public static FileStat lstat(File file) {
+        try {
+            return from(Os.lstat(file.getPath()));
+        } catch (ErrnoException e) {
+            return new FileStat(0, 0, UNKNOWN_DEVICE, TYPE_OTHER);
+        }
+    }
+    
+    private static FileStat from(StructStat stat) {
+        int type = TYPE_OTHER;
+        if (OsConstants.S_ISDIR(stat.st_mode)) {
+            type = TYPE_DIRECTORY;
+        } else if (OsConstants.S_ISLNK(stat.st_mode)) {
+            type = TYPE_SYMLINK;
+        }
+        return new FileStat(stat.st_size, stat.st_mtime * 1000L, stat.st_dev, type);
+    }
+    
+    public boolean isDirectory() {
+        return type == TYPE_DIRECTORY;
+    }
+    
+    public boolean isSymbolicLink() {
+        return type == TYPE_SYMLINK;
+    }
+    
+    // True if this directory is a mount point (or bind mount of another
+    // volume) relative to a parent on the given device
+    public boolean isOnOtherDevice(long parentDevice) {
+        return device != UNKNOWN_DEVICE && parentDevice != UNKNOWN_DEVICE && device != parentDevice;
+    }
+}
\ No newline at end of file
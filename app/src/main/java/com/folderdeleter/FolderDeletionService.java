@@ -9,57 +9,128 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.IBinder;
-import android.os.PowerManager;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
+// Short-lived foreground service that hosts a single deletion run and stops
+// itself as soon as the run has finished. Nothing stays resident between
+// runs: the next alarm starts it again, and the run
+// holds its wake lock only while it is deleting (see DeletionRunner).
 public class FolderDeletionService extends Service {
     
     private static final String TAG = "FolderDeletionService";
     private static final String CHANNEL_ID = "FolderDeletionChannel";
     private static final int NOTIFICATION_ID = 1001;
     
-    private static boolean isRunning = false;
-    private SettingsManager settingsManager;
-    private FolderManager folderManager;
-    private AlarmScheduler alarmScheduler;
-    private PowerManager.WakeLock wakeLock;
-    private ScheduledExecutorService executor;
+    private static final String EXTRA_FOLDERS = "com.folderdeleter.extra.FOLDERS";
     
-    public static boolean isRunning() {
-        return isRunning;
+    private boolean runActive;
+    private int lastStartId;
+    
+    // Starts a run over the given folders, or all selected folders if null.
+    // Falls back to running in-process if a foreground service may not be
+    // started from where we are (background start limits on Android 12+).
+    public static void startRun(Context context, List<String> folders) {
+        Intent intent = new Intent(context, FolderDeletionService.class);
+        if (folders != null) {
+            intent.putStringArrayListExtra(EXTRA_FOLDERS, new ArrayList<>(folders));
+        }
+        
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Cannot start deletion service, running in-process", e);
+            if (!DeletionRunner.runAsync(context, folders, DeferredRunJobService.newPauseCheck(context),
+                    new ReportCallback(context.getApplicationContext()))) {
+                requeue(context, folders);
+            }
+        }
+    }
+    
+    // The worker is busy with another run, so the folders wait for it in the
+    // deferred queue. Their conditions were already checked, so they are due
+    // as soon as the worker is free.
+    private static void requeue(Context context, List<String> folders) {
+        if (folders == null) {
+            folders = new SettingsManager(context).getSelectedFolders();
+        }
+        DeferredRunJobService.defer(context, folders, System.currentTimeMillis());
     }
     
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Service created");
-        
-        settingsManager = new SettingsManager(this);
-        folderManager = new FolderManager(this);
-        alarmScheduler = new AlarmScheduler(this);
-        
         createNotificationChannel();
-        acquireWakeLock();
-        
-        executor = Executors.newSingleThreadScheduledExecutor();
-        isRunning = true;
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "Service started");
-        
+        // Must be called for every start, even one that is not needed
         startForeground(NOTIFICATION_ID, createNotification());
-        scheduleNextDeletion();
+        lastStartId = startId;
+        WakeupStats.record(this, WakeupStats.EVENT_SERVICE_START);
+        
+        List<String> folders = intent != null ? intent.getStringArrayListExtra(EXTRA_FOLDERS) : null;
+        final Context context = getApplicationContext();
+        if (runActive) {
+            Log.d(TAG, "Run already in progress, requeueing request");
+            requeue(context, folders);
+            return START_NOT_STICKY;
+        }
+        
+        // The run's conditions held when it was started; if they stop
+        // holding, it pauses and the rest waits in the deferred queue
+        FolderManager.PauseCheck pauseCheck = DeferredRunJobService.newPauseCheck(context);
+        runActive = DeletionRunner.runAsync(context, folders, pauseCheck, new ReportCallback(context) {
+            @Override
+            public void onDeletionComplete(DeletionReport report) {
+                super.onDeletionComplete(report);
+                runActive = false;
+                finish();
+            }
+        });
+        
+        if (!runActive) {
+            // Another run (e.g. a threshold cleanup) already owns the worker
+            requeue(context, folders);
+            finish();
+        }
+        
+        // A run killed midway is resumed from the journal on the next alarm
+        return START_NOT_STICKY;
+    }
+    
+    private void finish() {
+        Log.d(TAG, "Run finished, stopping service");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            stopForeground(STOP_FOREGROUND_REMOVE);
+        } else {
+            stopForeground(true);
+        }
+        stopSelf(lastStartId);
+    }
+    
+    // Posts the outcome of a run; shared with the in-process fallback
+    private static class ReportCallback implements DeletionRunner.Callback {
+        
+        private final Context context;
         
-        // Schedule periodic checks every hour to ensure service is alive
-        startPeriodicHealthCheck();
+        ReportCallback(Context context) {
+            this.context = context;
+        }
         
-        return START_STICKY; // Restart if killed by system
+        @Override
+        public void onDeletionComplete(DeletionReport report) {
+            DeferredRunJobService.deferRemaining(context, report);
+            NotificationHelper.showReportNotification(context, report);
+        }
     }
     
     private void createNotificationChannel() {
@@ -69,7 +140,7 @@ public class FolderDeletionService extends Service {
                 "Folder Deletion Service",
                 NotificationManager.IMPORTANCE_LOW
             );
-            channel.setDescription("Background service for automatic folder deletion");
+            channel.setDescription("Shown while a scheduled folder deletion is running");
             
             NotificationManager manager = getSystemService(NotificationManager.class);
             manager.createNotificationChannel(channel);
@@ -82,11 +153,9 @@ public class FolderDeletionService extends Service {
             this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE
         );
         
-        String contentText = "Next deletion scheduled for: " + getNextDeletionTime();
-        
         return new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setContentTitle("Auto Folder Deleter Running")
-            .setContentText(contentText)
+            .setContentTitle("Deleting selected folders")
+            .setContentText("Freeing space in the selected folders")
             .setSmallIcon(R.drawable.ic_delete)
             .setContentIntent(pendingIntent)
             .setOngoing(true)
@@ -94,79 +163,14 @@ public class FolderDeletionService extends Service {
             .build();
     }
     
-    private void acquireWakeLock() {
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "FolderDeleter:WakeLock");
-        wakeLock.acquire();
-    }
-    
-    private void scheduleNextDeletion() {
-        alarmScheduler.scheduleNextDeletion();
-        updateNotification();
-    }
-    
-    private void startPeriodicHealthCheck() {
-        executor.scheduleWithFixedDelay(new Runnable() {
-            @Override
-            public void run() {
-                Log.d(TAG, "Health check - Service is alive");
-                
-                // Verify alarm is still scheduled
-                if (!alarmScheduler.isAlarmScheduled()) {
-                    Log.w(TAG, "Alarm was cancelled, rescheduling...");
-                    scheduleNextDeletion();
-                }
-                
-                // Update notification
-                updateNotification();
-            }
-        }, 1, 1, TimeUnit.HOURS);
-    }
-    
-    private void updateNotification() {
-        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        manager.notify(NOTIFICATION_ID, createNotification());
-    }
-    
-    private String getNextDeletionTime() {
-        return alarmScheduler.getNextDeletionTimeString();
-    }
-    
     @Override
     public void onDestroy() {
         Log.d(TAG, "Service destroyed");
-        
-        isRunning = false;
-        
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
-        }
-        
-        if (executor != null) {
-            executor.shutdown();
-        }
-        
-        // Cancel scheduled alarms
-        alarmScheduler.cancelAllAlarms();
-        
         super.onDestroy();
-        
-        // Restart service if it was stopped unexpectedly
-        if (settingsManager.isServiceEnabled()) {
-            Intent restartIntent = new Intent(this, FolderDeletionService.class);
-            startForegroundService(restartIntent);
-        }
     }
     
     @Override
     public IBinder onBind(Intent intent) {
         return null; // Not a bound service
     }
-    
-    @Override
-    public void onTaskRemoved(Intent rootIntent) {
-        // Keep service running even when app is removed from recent tasks
-        Log.d(TAG, "App removed from recent tasks, but service continues running");
-        super.onTaskRemoved(rootIntent);
-    }
 }
\ No newline at end of file
@@ -1,45 +1,361 @@
 package com.folderdeleter;
 
 import android.content.Context;
-import android.os.Environment;
+import android.os.SystemClock;
 import android.util.Log;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class FolderManager {
     
     private static final String TAG = "FolderManager";
+    // Largest files held in memory at once by a time-budgeted run; the rest
+    // wait in the spill directory
+    private static final int MAX_CANDIDATES = 4096;
+    private static final String CANDIDATE_SPILL_DIR = "candidates";
     private Context context;
     private SettingsManager settingsManager;
+    private StagingArea stagingArea;
+    private DeletionJournal journal;
+    private ParallelDeletionEngine deletionEngine;
+    private DeletionRun currentRun;
+    private PauseCheck pauseCheck;
+    
+    // Asked before each folder of a run, and every few seconds while one is
+    // being deleted (DeletionRun), whether to stop and leave the rest for later
+    public interface PauseCheck {
+        boolean shouldPause();
+    }
     
     public FolderManager(Context context) {
         this.context = context;
         this.settingsManager = new SettingsManager(context);
+        this.stagingArea = new StagingArea(context);
+        this.journal = new DeletionJournal(context);
+    }
+    
+    public void setPauseCheck(PauseCheck pauseCheck) {
+        this.pauseCheck = pauseCheck;
     }
     
     public boolean deleteSelectedFolders() {
-        List<String> selectedFolders = settingsManager.getSelectedFolders();
-        boolean overallSuccess = true;
+        return runDeletion().isSuccess();
+    }
+    
+    public DeletionReport runDeletion() {
+        return runDeletion(settingsManager.getSelectedFolders());
+    }
+    
+    // Runs over a subset of the selected folders, e.g. one that crossed its size threshold
+    public DeletionReport runDeletion(List<String> selectedFolders) {
+        int timeBudget = settingsManager.getDeletionTimeBudget();
+        if (timeBudget > 0) {
+            return runPrioritizedDeletion(selectedFolders, timeBudget * 1000L);
+        }
+        
+        DeletionReport report = new DeletionReport(System.currentTimeMillis());
+        
+        int parallelism = settingsManager.getDeletionParallelism();
+        Log.d(TAG, "Starting deletion of " + selectedFolders.size() + " folders (parallelism " + parallelism + ")");
         
-        Log.d(TAG, "Starting deletion of " + selectedFolders.size() + " folders");
+        journal.begin(selectedFolders);
+        deletionEngine = createDeletionEngine();
+        currentRun = new DeletionRun(journal, new DeletionThrottle(context));
+        currentRun.setPauseCheck(pauseCheck);
         
+        try {
+            for (int i = 0; i < selectedFolders.size(); i++) {
+                String folderPath = selectedFolders.get(i);
+                if (pauseCheck != null && pauseCheck.shouldPause()) {
+                    // Finished folders are done and the rest not started, so
+                    // the journal closes normally
+                    Log.d(TAG, "Pausing run, " + (selectedFolders.size() - i) + " folders left");
+                    report.setDeferredFolders(selectedFolders.subList(i, selectedFolders.size()));
+                    break;
+                }
+                
+                DeletionReport.FolderReport folderReport = new DeletionReport.FolderReport(folderPath);
+                
+                if (journal.isFolderCompleted(folderPath)) {
+                    Log.d(TAG, "Skipping folder finished before interruption: " + folderPath);
+                    folderReport.finish(journal.getFolderResult(folderPath), 0);
+                    report.addFolder(folderReport);
+                    continue;
+                }
+                
+                long folderStart = System.currentTimeMillis();
+                currentRun.setFolderReport(folderReport);
+                
+                boolean success;
+                try {
+                    success = deleteFolder(folderPath, folderReport, true);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error deleting folder: " + folderPath, e);
+                    success = false;
+                }
+                
+                currentRun.setFolderReport(null);
+                FolderSizeService.getInstance(context).invalidate(new File(folderPath));
+                FolderWatcher.getInstance(context).rescan(folderPath);
+                boolean paused = currentRun.isPaused();
+                // A folder cut short by a pause has not failed if nothing did
+                folderReport.finish(paused ? folderReport.getFailureCount() == 0 : success,
+                    System.currentTimeMillis() - folderStart);
+                report.addFolder(folderReport);
+                if (paused) {
+                    // Started over next time; what is already gone costs nothing to walk
+                    Log.d(TAG, "Paused inside " + folderPath + ", " + (selectedFolders.size() - i) + " folders left");
+                    report.setDeferredFolders(selectedFolders.subList(i, selectedFolders.size()));
+                    break;
+                }
+                journal.recordFolder(folderPath, success);
+            }
+            
+            journal.finish();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Deletion run aborted", e);
+            report.setSuccess(false);
+        } finally {
+            if (deletionEngine != null) {
+                deletionEngine.shutdown();
+                deletionEngine = null;
+            }
+            DeletionThrottle throttle = currentRun.getThrottle();
+            report.finish(System.currentTimeMillis(),
+                throttle.getEffectiveUnlinkRate(), throttle.getEffectiveDirectoryOpRate());
+            currentRun = null;
+        }
+        
+        Log.d(TAG, "Deletion run finished: " + report.getSummary());
+        settingsManager.setLastDeletionReport(report);
+        return report;
+    }
+    
+    // Frees as much space as possible within the time budget. One walk
+    // collects every deletable file (DeletionCandidates), which are then
+    // deleted biggest-first. Once every file is gone, a regular pass removes
+    // the emptied directories and anything the collection could not hold.
+    // Whatever is left at the deadline stays for the next run, so this mode
+    // neither journals nor stages.
+    private DeletionReport runPrioritizedDeletion(List<String> selectedFolders, long timeBudgetMillis) {
+        DeletionReport report = new DeletionReport(System.currentTimeMillis());
+        long deadline = SystemClock.elapsedRealtime() + timeBudgetMillis;
+        Log.d(TAG, "Starting prioritized deletion of " + selectedFolders.size() + " folders (budget "
+            + timeBudgetMillis + " ms)");
+        
+        List<DeletionReport.FolderReport> folderReports = new ArrayList<>();
         for (String folderPath : selectedFolders) {
-            try {
-                boolean success = deleteFolder(folderPath);
-                if (!success) {
+            folderReports.add(new DeletionReport.FolderReport(folderPath));
+        }
+        boolean[] folderResults = new boolean[selectedFolders.size()];
+        deletionEngine = createDeletionEngine();
+        DeletionRun deleteRun = new DeletionRun(null, new DeletionThrottle(context));
+        deleteRun.setPauseCheck(pauseCheck);
+        boolean outOfTime = false;
+        
+        DeletionCandidates candidates = new DeletionCandidates(MAX_CANDIDATES,
+            new File(context.getFilesDir(), CANDIDATE_SPILL_DIR));
+        
+        try {
+            collectCandidates(candidates, selectedFolders, folderReports, deadline);
+            report.setTimeBudget(timeBudgetMillis, candidates.getTotalBytes());
+            deleteCandidates(candidates, folderReports, deleteRun, deadline);
+            if (SystemClock.elapsedRealtime() >= deadline) {
+                outOfTime = true;
+            }
+            
+            currentRun = deleteRun;
+            for (int i = 0; i < selectedFolders.size() && !outOfTime && !deleteRun.isPaused(); i++) {
+                if (SystemClock.elapsedRealtime() >= deadline) {
+                    outOfTime = true;
+                    break;
+                }
+                String folderPath = selectedFolders.get(i);
+                deleteRun.setFolderReport(folderReports.get(i));
+                try {
+                    folderResults[i] = deleteFolder(folderPath, folderReports.get(i), false);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error deleting folder: " + folderPath, e);
+                }
+                deleteRun.setFolderReport(null);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Deletion run aborted", e);
+            report.setSuccess(false);
+        } finally {
+            if (deletionEngine != null) {
+                deletionEngine.shutdown();
+                deletionEngine = null;
+            }
+            candidates.close();
+            currentRun = null;
+        }
+        
+        // Deletions interleave across folders, so each folder gets the run's time
+        long elapsed = System.currentTimeMillis() - report.getStartTime();
+        boolean cutShort = outOfTime || deleteRun.isPaused();
+        for (int i = 0; i < selectedFolders.size(); i++) {
+            String folderPath = selectedFolders.get(i);
+            DeletionReport.FolderReport folderReport = folderReports.get(i);
+            FolderSizeService.getInstance(context).invalidate(new File(folderPath));
+            FolderWatcher.getInstance(context).rescan(folderPath);
+            // A folder cut short by the budget or a pause has not failed if nothing did
+            folderReport.finish(cutShort ? folderReport.getFailureCount() == 0 : folderResults[i], elapsed);
+            report.addFolder(folderReport);
+        }
+        report.setBudgetExhausted(outOfTime);
+        if (deleteRun.isPaused()) {
+            // Files went biggest-first across all folders, so all of them have some left
+            report.setDeferredFolders(selectedFolders);
+        }
+        DeletionThrottle throttle = deleteRun.getThrottle();
+        report.finish(System.currentTimeMillis(),
+            throttle.getEffectiveUnlinkRate(), throttle.getEffectiveDirectoryOpRate());
+        
+        Log.d(TAG, "Prioritized deletion finished: " + report.getSummary());
+        settingsManager.setLastDeletionReport(report);
+        return report;
+    }
+    
+    // Walks every folder the way its deletion would, offering the files it
+    // would delete to the candidates instead
+    private void collectCandidates(DeletionCandidates candidates, List<String> selectedFolders,
+            List<DeletionReport.FolderReport> folderReports, long deadline) {
+        currentRun = new DeletionRun(candidates, deadline);
+        try {
+            for (int i = 0; i < selectedFolders.size(); i++) {
+                currentRun.setCandidateFolder(i);
+                try {
+                    deleteFolder(selectedFolders.get(i), folderReports.get(i), false);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error collecting files in: " + selectedFolders.get(i), e);
+                }
+            }
+        } finally {
+            currentRun = null;
+        }
+        Log.d(TAG, "Collected " + candidates.getTotalCount() + " files, "
+            + DeletionReport.formatBytes(candidates.getTotalBytes()));
+    }
+    
+    // Deletes the candidates largest first until the deadline
+    private void deleteCandidates(DeletionCandidates candidates, List<DeletionReport.FolderReport> folderReports,
+            DeletionRun run, long deadline) {
+        List<DeletionCandidates.Candidate> batch;
+        while (!(batch = candidates.nextBatch()).isEmpty()) {
+            for (DeletionCandidates.Candidate candidate : batch) {
+                if (SystemClock.elapsedRealtime() >= deadline || run.isPaused()) {
+                    run.setFolderReport(null);
+                    return;
+                }
+                run.setFolderReport(folderReports.get(candidate.folderIndex));
+                run.deleteCandidate(candidate);
+            }
+        }
+        run.setFolderReport(null);
+    }
+    
+    // Walks the selected folders exactly as runDeletion would, with the same
+    // walker and engine, but streams what it would delete to the manifest
+    // (DeletionManifest) instead of deleting it
+    public DeletionReport previewDeletion() {
+        List<String> selectedFolders = settingsManager.getSelectedFolders();
+        DeletionReport report = new DeletionReport(System.currentTimeMillis());
+        report.setDryRun(true);
+        
+        DeletionManifest manifest = new DeletionManifest(context);
+        manifest.begin();
+        deletionEngine = createDeletionEngine();
+        currentRun = new DeletionRun(manifest);
+        
+        try {
+            for (String folderPath : selectedFolders) {
+                DeletionReport.FolderReport folderReport = new DeletionReport.FolderReport(folderPath);
+                long folderStart = System.currentTimeMillis();
+                manifest.beginFolder(folderPath);
+                currentRun.setFolderReport(folderReport);
+                
+                boolean success;
+                try {
+                    success = deleteFolder(folderPath, folderReport, false);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error previewing folder: " + folderPath, e);
+                    success = false;
+                }
+                
+                currentRun.setFolderReport(null);
+                folderReport.finish(success, System.currentTimeMillis() - folderStart);
+                report.addFolder(folderReport);
+            }
+        } finally {
+            if (deletionEngine != null) {
+                deletionEngine.shutdown();
+                deletionEngine = null;
+            }
+            manifest.finish();
+            report.finish(System.currentTimeMillis(), 0, 0);
+            currentRun = null;
+        }
+        
+        Log.d(TAG, "Deletion preview finished: " + report.getSummary()
+            + ", manifest in " + manifest.getFile().getAbsolutePath());
+        settingsManager.setLastPreviewReport(report);
+        return report;
+    }
+    
+    // Deletes everything left in the staging directories, including entries
+    // from runs that were interrupted by a crash or reboot. DeletionRunner
+    // calls it at the end of every pass.
+    public boolean purgeStagedFolders() {
+        List<File> stagedEntries = stagingArea.getStagedEntries();
+        if (stagedEntries.isEmpty()) {
+            return true;
+        }
+        
+        Log.d(TAG, "Purging " + stagedEntries.size() + " staged folders");
+        boolean overallSuccess = true;
+        ParallelDeletionEngine engine = createDeletionEngine();
+        DeletionRun purgeRun = new DeletionRun(null, new DeletionThrottle(context));
+        
+        try {
+            for (File staged : stagedEntries) {
+                if (!deleteTree(staged, engine, purgeRun)) {
+                    Log.e(TAG, "Failed to purge staged folder: " + staged.getAbsolutePath());
                     overallSuccess = false;
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error deleting folder: " + folderPath, e);
-                overallSuccess = false;
             }
+        } finally {
+            if (engine != null) {
+                engine.shutdown();
+            }
+            logEffectiveRates(purgeRun);
         }
         
+        stagingArea.releaseEmptyStagingDirs();
         return overallSuccess;
     }
     
-    private boolean deleteFolder(String folderPath) {
+    private ParallelDeletionEngine createDeletionEngine() {
+        int parallelism = settingsManager.getDeletionParallelism();
+        return parallelism > 1 ? new ParallelDeletionEngine(parallelism) : null;
+    }
+    
+    private boolean deleteTree(File root, ParallelDeletionEngine engine, DeletionRun run) {
+        return engine != null ? engine.delete(root, run) : deleteRecursively(root, run);
+    }
+    
+    private void logEffectiveRates(DeletionRun run) {
+        DeletionThrottle throttle = run.getThrottle();
+        if (throttle != null) {
+            Log.d(TAG, String.format(Locale.US, "Effective rate: %.1f unlinks/s, %.1f directory ops/s",
+                throttle.getEffectiveUnlinkRate(), throttle.getEffectiveDirectoryOpRate()));
+        }
+    }
+    
+    // `allowStaging` is false for passes that must delete in place
+    private boolean deleteFolder(String folderPath, DeletionReport.FolderReport folderReport, boolean allowStaging) {
         Log.d(TAG, "Attempting to delete folder: " + folderPath);
         
         File folder = new File(folderPath);
@@ -60,8 +376,36 @@ public class FolderManager {
             return false;
         }
         
+        ExpiryPolicy policy = settingsManager.getExpiryPolicy(folderPath);
+        DeletionRules rules = settingsManager.getDeletionRules(folderPath);
+        if (policy != null && policy.isEmpty()) {
+            policy = null;
+        }
+        if (rules != null && rules.isEmpty()) {
+            rules = null;
+        }
+        if (policy != null || rules != null) {
+            // With live watcher counts an empty folder needs no walk at all
+            FolderWatcher.Stats stats = FolderWatcher.getInstance(context).getStats(folderPath);
+            if (stats != null && stats.live && stats.fileCount == 0) {
+                Log.d(TAG, "No files to expire in: " + folderPath);
+                return true;
+            }
+            return expireFolder(folder, policy, rules);
+        }
+        
+        if (allowStaging && settingsManager.isStagedDeletionEnabled() && !currentRun.isDryRun()) {
+            // The purge itself runs once the pass has finished every folder
+            if (stagingArea.stage(folder) != null) {
+                Log.d(TAG, "Folder staged for background purge: " + folderPath);
+                folderReport.setStaged(true);
+                return true;
+            }
+            Log.w(TAG, "Staging failed, deleting in place: " + folderPath);
+        }
+        
         try {
-            boolean success = deleteRecursively(folder);
+            boolean success = deleteTree(folder, deletionEngine, currentRun);
             if (success) {
                 Log.d(TAG, "Successfully deleted folder: " + folderPath);
             } else {
@@ -74,127 +418,184 @@ public class FolderManager {
         }
     }
     
-    private boolean deleteRecursively(File file) {
-        if (file.isDirectory()) {
-            File[] children = file.listFiles();
-            if (children != null) {
-                for (File child : children) {
-                    if (!deleteRecursively(child)) {
-                        return false;
-                    }
-                }
-            }
-        }
+    private boolean expireFolder(File folder, ExpiryPolicy policy, DeletionRules rules) {
+        Log.d(TAG, "Expiring files in " + folder.getAbsolutePath()
+            + (policy != null ? " with policy " + policy.serialize() : "")
+            + (rules != null ? " with rules " + rules.serialize().replace('\n', ' ') : ""));
         
-        boolean deleted = file.delete();
-        if (!deleted) {
-            Log.w(TAG, "Could not delete file: " + file.getAbsolutePath());
-        }
-        return deleted;
-    }
-    
-    private boolean isSystemCriticalFolder(String folderPath) {
-        // List of system critical folders that should never be deleted
-        String[] criticalFolders = {
-            "/system",
-            "/data/system",
-            "/data/data/com.android",
-            Environment.getRootDirectory().getAbsolutePath(),
-            "/proc",
-            "/dev",
-            "/sys"
-        };
-        
-        for (String criticalFolder : criticalFolders) {
-            if (folderPath.startsWith(criticalFolder)) {
-                return true;
+        try {
+            boolean success = deletionEngine != null
+                ? deletionEngine.expire(folder, policy, rules, currentRun)
+                : expireRecursively(folder, policy, rules, currentRun);
+            if (!success) {
+                Log.e(TAG, "Failed to expire some files in: " + folder.getAbsolutePath());
             }
+            return success;
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception expiring folder: " + folder.getAbsolutePath(), e);
+            return false;
         }
-        
-        return false;
     }
     
-    public List<File> getAvailableFolders() {
-        List<File> folders = new ArrayList<>();
-        
-        // Add external storage directories
-        File externalStorage = Environment.getExternalStorageDirectory();
-        if (externalStorage != null && externalStorage.exists()) {
-            addFoldersRecursively(folders, externalStorage, 0, 3); // Max depth 3
-        }
-        
-        // Add Android/data directory specifically
-        File androidDataDir = new File(externalStorage, "Android/data");
-        if (androidDataDir.exists() && androidDataDir.isDirectory()) {
-            File[] apps = androidDataDir.listFiles();
-            if (apps != null) {
-                for (File app : apps) {
-                    if (app.isDirectory()) {
-                        folders.add(app);
+    // Deletes the files matched by the policy and allowed by the rules, and
+    // prunes directories this pass emptied, all in the same walk. Directories
+    // that were empty to begin with are left alone. Subtrees the rules
+    // exclude are not entered. The folder itself is kept.
+    // Package-private so tests can compare it with ParallelDeletionEngine.
+    static boolean expireRecursively(File folder, final ExpiryPolicy policy, final DeletionRules rules,
+            final DeletionRun run) {
+        return TreeWalker.walk(folder, TreeWalker.UNLIMITED_DEPTH, new TreeWalker.Visitor() {
+            // Rule state per depth of the directory currently being walked
+            private final List<DeletionRules.State> ruleStates = new ArrayList<>();
+            // Whether anything was deleted directly in the directory at each depth
+            private final List<Boolean> changed = new ArrayList<>();
+            // Set between preVisitDirectory and the postVisitDirectory that follows it
+            private File protectedDir;
+            
+            @Override
+            public boolean preVisitDirectory(File dir, int depth) {
+                if (changed.size() > depth) {
+                    changed.set(depth, false);
+                } else {
+                    changed.add(false);
+                }
+                if (depth > 0 && run.isProtectedDirectory(dir)) {
+                    protectedDir = dir;
+                    return false;
+                }
+                if (rules != null) {
+                    DeletionRules.State state = depth == 0
+                        ? rules.getRootState()
+                        : rules.enterDirectory(ruleStates.get(depth - 1), dir.getName());
+                    if (ruleStates.size() > depth) {
+                        ruleStates.set(depth, state);
+                    } else {
+                        ruleStates.add(state);
+                    }
+                    if (state.isExcluded()) {
+                        return false;
                     }
                 }
+                return !run.isSubtreeCompleted(dir);
             }
-        }
-        
-        // Add Downloads folder
-        File downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-        if (downloadsDir.exists()) {
-            folders.add(downloadsDir);
-        }
-        
-        // Add Pictures folder
-        File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-        if (picturesDir.exists()) {
-            folders.add(picturesDir);
-        }
-        
-        // Add Movies folder
-        File moviesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES);
-        if (moviesDir.exists()) {
-            folders.add(moviesDir);
-        }
-        
-        return folders;
+            
+            @Override
+            protected TreeWalker.DirectoryCursor openDirectory(File dir, int openStreams) {
+                return run.openDirectory(dir, openStreams);
+            }
+            
+            @Override
+            public boolean visitFile(File file, FileStat stat, int depth) {
+                if (rules != null && !rules.isFileDeleted(ruleStates.get(depth - 1), file.getName())) {
+                    return true;
+                }
+                if (policy != null && !policy.matches(file, stat, run.getStartTime())) {
+                    return true;
+                }
+                if (!run.deleteFile(file, stat)) {
+                    return false;
+                }
+                changed.set(depth - 1, true);
+                return true;
+            }
+            
+            @Override
+            public boolean visitBoundary(File entry, int depth, int kind) {
+                // Symlinks are left alone by an expiry pass
+                return run.handleBoundary(entry, kind, false);
+            }
+            
+            @Override
+            public boolean postVisitDirectory(File dir, int depth) {
+                if (dir == protectedDir) {
+                    // Not a directory this pass may prune
+                    protectedDir = null;
+                    return true;
+                }
+                if (depth == 0 || run.isSubtreeCompleted(dir)) {
+                    return true;
+                }
+                if (rules != null && ruleStates.get(depth).isExcluded()) {
+                    // Excluded subtrees are kept as they are
+                    return true;
+                }
+                
+                // Directories still holding kept files simply fail to rmdir.
+                // One nothing was deleted from was empty before and is kept.
+                if (changed.get(depth) && run.deleteDirectoryIfEmpty(dir)) {
+                    changed.set(depth - 1, true);
+                } else {
+                    run.recordSubtree(dir);
+                }
+                return true;
+            }
+        });
     }
     
-    private void addFoldersRecursively(List<File> folders, File directory, int currentDepth, int maxDepth) {
-        if (currentDepth >= maxDepth || !directory.canRead()) {
-            return;
-        }
-        
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory() && !file.isHidden()) {
-                    // Skip system directories
-                    String name = file.getName();
-                    if (!name.startsWith(".") && !isSystemCriticalFolder(file.getAbsolutePath())) {
-                        folders.add(file);
-                        addFoldersRecursively(folders, file, currentDepth + 1, maxDepth);
-                    }
+    // Package-private so the benchmark module can measure it directly and
+    // tests can compare it with ParallelDeletionEngine
+    static boolean deleteRecursively(File file, final DeletionRun run) {
+        return TreeWalker.walk(file, TreeWalker.UNLIMITED_DEPTH, new TreeWalker.Visitor() {
+            @Override
+            public boolean preVisitDirectory(File dir, int depth) {
+                return !run.isSubtreeCompleted(dir) && (depth == 0 || !run.isProtectedDirectory(dir));
+            }
+            
+            @Override
+            protected TreeWalker.DirectoryCursor openDirectory(File dir, int openStreams) {
+                return run.openDirectory(dir, openStreams);
+            }
+            
+            @Override
+            public boolean visitFile(File file, FileStat stat, int depth) {
+                return run.deleteFile(file, stat);
+            }
+            
+            @Override
+            public boolean visitBoundary(File entry, int depth, int kind) {
+                run.handleBoundary(entry, kind, true);
+                // A failed unlink is recorded; the rest of the tree is still deleted
+                return true;
+            }
+            
+            @Override
+            public boolean postVisitDirectory(File dir, int depth) {
+                // Already processed by an interrupted run and left in place
+                if (run.isSubtreeCompleted(dir)) {
+                    return false;
                 }
+                
+                boolean deleted = run.deleteDirectory(dir);
+                if (!deleted) {
+                    run.recordSubtree(dir);
+                }
+                return deleted;
             }
-        }
+        });
     }
     
-    public long getFolderSize(String folderPath) {
-        return getFolderSizeRecursive(new File(folderPath));
+    // Also true for folders that resolve into, or contain, a protected tree
+    boolean isSystemCriticalFolder(String folderPath) {
+        return ProtectedPaths.getInstance().isCritical(folderPath);
     }
     
-    private long getFolderSizeRecursive(File file) {
-        long size = 0;
-        
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    size += getFolderSizeRecursive(f);
-                }
-            }
-        } else {
-            size += file.length();
+    // Top-level folders for the picker; deeper levels are listed lazily
+    // through FolderTree as they are opened
+    public List<File> getAvailableFolders() {
+        return FolderTree.getInstance(context).getRoots();
+    }
+    
+    public long getFolderSize(String folderPath) {
+        // Watched folders keep a running byte count
+        FolderWatcher.Stats stats = FolderWatcher.getInstance(context).getStats(folderPath);
+        if (stats != null && stats.live) {
+            return stats.byteCount;
         }
-        
-        return size;
+        return FolderSizeService.getInstance(context).getSize(new File(folderPath));
+    }
+    
+    // Last recorded size, or -1; cheap enough for the UI thread
+    public long getLastKnownFolderSize(String folderPath) {
+        return FolderSizeService.getInstance(context).getLastKnownSize(new File(folderPath));
     }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
@@ -11,10 +12,13 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 public class FolderPickerActivity extends Activity {
     
+    private static final String NO_SUBFOLDERS = "(No subfolders found)";
+    
     private ListView listViewFolders;
     private TextView txtCurrentPath;
     private Button btnSelectCurrent;
@@ -22,8 +26,13 @@ public class FolderPickerActivity extends Activity {
     
     private FolderManager folderManager;
     private ArrayAdapter<String> foldersAdapter;
+    private final List<String> folderPaths = new ArrayList<>();
     private String currentPath;
     
+    private FolderTree folderTree;
+    private DirectoryLister directoryLister;
+    private DirectoryLister.Listing currentListing;
+    
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -33,6 +42,20 @@ public class FolderPickerActivity extends Activity {
         loadInitialFolders();
     }
     
+    @Override
+    protected void onPause() {
+        super.onPause();
+        FolderSnapshot.getInstance(this).saveAsync();
+    }
+    
+    @Override
+    protected void onDestroy() {
+        cancelListing();
+        folderTree.cancelPrefetch();
+        directoryLister.shutdown();
+        super.onDestroy();
+    }
+    
     private void initializeComponents() {
         listViewFolders = findViewById(R.id.listViewFolders);
         txtCurrentPath = findViewById(R.id.txtCurrentPath);
@@ -40,6 +63,14 @@ public class FolderPickerActivity extends Activity {
         btnGoBack = findViewById(R.id.btnGoBack);
         
         folderManager = new FolderManager(this);
+        folderTree = FolderTree.getInstance(this);
+        directoryLister = new DirectoryLister();
+        
+        // One adapter over folderPaths for the whole activity; listings only
+        // change its contents
+        foldersAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, folderPaths);
+        foldersAdapter.setNotifyOnChange(false);
+        listViewFolders.setAdapter(foldersAdapter);
         
         btnSelectCurrent.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -59,21 +90,36 @@ public class FolderPickerActivity extends Activity {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
                 String selectedPath = (String) parent.getItemAtPosition(position);
-                navigateToFolder(selectedPath);
+                if (!NO_SUBFOLDERS.equals(selectedPath)) {
+                    navigateToFolder(selectedPath);
+                }
+            }
+        });
+        
+        // Folders that come into view are the likely next to be opened
+        listViewFolders.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                if (scrollState == SCROLL_STATE_IDLE) {
+                    prefetchVisibleFolders();
+                }
+            }
+            
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
             }
         });
     }
     
     private void loadInitialFolders() {
+        cancelListing();
         List<File> availableFolders = folderManager.getAvailableFolders();
-        java.util.List<String> folderPaths = new java.util.ArrayList<>();
         
+        folderPaths.clear();
         for (File folder : availableFolders) {
             folderPaths.add(folder.getAbsolutePath());
         }
-        
-        foldersAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, folderPaths);
-        listViewFolders.setAdapter(foldersAdapter);
+        foldersAdapter.notifyDataSetChanged();
         
         currentPath = "/storage/emulated/0"; // Default to external storage
         txtCurrentPath.setText("Current: " + currentPath);
@@ -90,28 +136,97 @@ public class FolderPickerActivity extends Activity {
         currentPath = folderPath;
         txtCurrentPath.setText("Current: " + currentPath);
         
-        // Load subfolders
-        File[] subFolders = folder.listFiles();
-        java.util.List<String> folderPaths = new java.util.ArrayList<>();
+        cancelListing();
+        folderPaths.clear();
+        listViewFolders.setSelection(0);
         
-        if (subFolders != null) {
-            for (File subFolder : subFolders) {
-                if (subFolder.isDirectory() && !subFolder.isHidden()) {
-                    folderPaths.add(subFolder.getAbsolutePath());
+        // Folders listed earlier (or prefetched) and unchanged since are shown at once
+        List<String> cachedPaths = folderTree.getCachedChildren(folder);
+        if (cachedPaths != null) {
+            folderPaths.addAll(cachedPaths);
+            if (folderPaths.isEmpty()) {
+                folderPaths.add(NO_SUBFOLDERS);
+            }
+            foldersAdapter.notifyDataSetChanged();
+            prefetchVisibleFolders();
+            return;
+        }
+        foldersAdapter.notifyDataSetChanged();
+        
+        // Otherwise load subfolders in the background; pages are merged in as they arrive
+        final File listedFolder = folder;
+        final long lastModified = FileStat.of(folder).lastModified;
+        currentListing = directoryLister.list(folder, new DirectoryLister.Callback() {
+            @Override
+            public void onPage(List<String> page) {
+                mergeSorted(page);
+                foldersAdapter.notifyDataSetChanged();
+            }
+            
+            @Override
+            public void onComplete(int folderCount) {
+                currentListing = null;
+                folderTree.putChildren(listedFolder, lastModified, new ArrayList<>(folderPaths));
+                if (folderCount == 0) {
+                    folderPaths.add(NO_SUBFOLDERS);
+                    foldersAdapter.notifyDataSetChanged();
+                } else {
+                    prefetchVisibleFolders();
                 }
             }
+        });
+    }
+    
+    private void cancelListing() {
+        if (currentListing != null) {
+            currentListing.cancel();
+            currentListing = null;
+        }
+    }
+    
+    private void prefetchVisibleFolders() {
+        int first = Math.max(0, listViewFolders.getFirstVisiblePosition());
+        int last = listViewFolders.getLastVisiblePosition();
+        if (last < first) {
+            // Not laid out yet; assume the top of the list is what will show
+            last = first + 10;
         }
         
-        if (folderPaths.isEmpty()) {
-            folderPaths.add("(No subfolders found)");
+        List<String> visible = new ArrayList<>();
+        for (int i = first; i <= last && i < folderPaths.size(); i++) {
+            if (!NO_SUBFOLDERS.equals(folderPaths.get(i))) {
+                visible.add(folderPaths.get(i));
+            }
         }
+        if (!visible.isEmpty()) {
+            folderTree.prefetch(visible);
+        }
+    }
+    
+    // Merges an already sorted page into the sorted adapter contents
+    private void mergeSorted(List<String> page) {
+        List<String> merged = new ArrayList<>(folderPaths.size() + page.size());
+        int i = 0;
+        int j = 0;
+        while (i < folderPaths.size() && j < page.size()) {
+            if (String.CASE_INSENSITIVE_ORDER.compare(folderPaths.get(i), page.get(j)) <= 0) {
+                merged.add(folderPaths.get(i++));
+            } else {
+                merged.add(page.get(j++));
+            }
+        }
+        merged.addAll(folderPaths.subList(i, folderPaths.size()));
+        merged.addAll(page.subList(j, page.size()));
         
-        foldersAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, folderPaths);
-        listViewFolders.setAdapter(foldersAdapter);
+        folderPaths.clear();
+        folderPaths.addAll(merged);
     }
     
     private void selectCurrentFolder() {
-        if (currentPath != null && !currentPath.isEmpty()) {
+        if (currentPath != null && ProtectedPaths.getInstance().isCritical(currentPath)) {
+            // The roots themselves are not filtered, e.g. "/"
+            Toast.makeText(this, "This folder is protected and cannot be selected", Toast.LENGTH_SHORT).show();
+        } else if (currentPath != null && !currentPath.isEmpty()) {
             Intent resultIntent = new Intent();
             resultIntent.putExtra("selected_folder", currentPath);
             setResult(RESULT_OK, resultIntent);
@@ -0,0 +1,308 @@
+package com.folderdeleter;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+// When one folder is due for deletion. Three forms, serialized with '|'
+// like ExpiryPolicy:
+//   "interval|3|02:00"   every 3 days at 02:00, counted from the last run
+//   "weekdays|mon,thu|02:00"   on the given weekdays at 02:00
+//   "cron|30 2 * * 1-5"  minute hour day-of-month month day-of-week, with
+//                        *, lists, ranges and /steps (day-of-week 0 = Sunday)
+// Weekday schedules are compiled to the same field sets as cron
+// expressions, so both are matched by one routine.
+public class FolderSchedule {
+    
+    private static final String KIND_INTERVAL = "interval";
+    private static final String KIND_WEEKDAYS = "weekdays";
+    private static final String KIND_CRON = "cron";
+    
+    private static final String[] WEEKDAY_NAMES = {"sun", "mon", "tue", "wed", "thu", "fri", "sat"};
+    
+    // A cron expression that never matches (e.g. February 30th) gives up
+    // after this many days
+    private static final int MAX_SEARCH_DAYS = 366 * 5;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    
+    private final String kind;
+    private final String spec;
+    private final int intervalDays;
+    private final int hour;
+    private final int minute;
+    
+    // Cron field sets; bit i set means value i matches
+    private long minutes;
+    private long hours;
+    private long daysOfMonth;
+    private long months;
+    private long daysOfWeek;
+    private boolean dayOfMonthRestricted;
+    private boolean dayOfWeekRestricted;
+    
+    private FolderSchedule(String kind, String spec, int intervalDays, int hour, int minute) {
+        this.kind = kind;
+        this.spec = spec;
+        this.intervalDays = intervalDays;
+        this.hour = hour;
+        this.minute = minute;
+    }
+    
+    public static FolderSchedule interval(int days, int hour, int minute) {
+        return new FolderSchedule(KIND_INTERVAL, null, Math.max(1, days), clamp(hour, 23), clamp(minute, 59));
+    }
+    
+    // Weekdays as a mask, bit 0 = Sunday
+    public static FolderSchedule weekdays(int weekdayMask, int hour, int minute) {
+        FolderSchedule schedule = new FolderSchedule(KIND_WEEKDAYS, formatWeekdays(weekdayMask),
+            0, clamp(hour, 23), clamp(minute, 59));
+        schedule.minutes = 1L << schedule.minute;
+        schedule.hours = 1L << schedule.hour;
+        schedule.daysOfMonth = bits(1, 31);
+        schedule.months = bits(0, 11);
+        schedule.daysOfWeek = weekdayMask & 0x7f;
+        schedule.dayOfWeekRestricted = true;
+        return schedule;
+    }
+    
+    // Returns null if the expression is malformed
+    public static FolderSchedule cron(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            return null;
+        }
+        
+        FolderSchedule schedule = new FolderSchedule(KIND_CRON, expression.trim(), 0, 0, 0);
+        schedule.minutes = parseField(fields[0], 0, 59);
+        schedule.hours = parseField(fields[1], 0, 23);
+        schedule.daysOfMonth = parseField(fields[2], 1, 31);
+        // Months are kept zero-based, as Calendar has them
+        long months = parseField(fields[3], 1, 12);
+        schedule.months = months >>> 1;
+        long daysOfWeek = parseField(fields[4], 0, 7);
+        // 7 is Sunday as well
+        schedule.daysOfWeek = (daysOfWeek | (daysOfWeek >>> 7)) & 0x7f;
+        if (schedule.minutes == 0 || schedule.hours == 0 || schedule.daysOfMonth == 0
+                || months == 0 || schedule.daysOfWeek == 0) {
+            return null;
+        }
+        schedule.dayOfMonthRestricted = !fields[2].equals("*");
+        schedule.dayOfWeekRestricted = !fields[4].equals("*");
+        return schedule;
+    }
+    
+    public boolean isInterval() {
+        return KIND_INTERVAL.equals(kind);
+    }
+    
+    // Next time the folder is due, strictly after `after`, or -1 if never.
+    // Interval schedules count whole days from the day of the last run, so
+    // a run that started a little late or early keeps its time of day; with
+    // no run yet the next occurrence of the time of day is due. Only the
+    // calendar's time zone matters, so results are reproducible.
+    public long nextFireTime(long lastRun, long after, Calendar calendar) {
+        if (isInterval()) {
+            calendar.setTimeInMillis(lastRun > 0 ? lastRun : after);
+            calendar.set(Calendar.HOUR_OF_DAY, hour);
+            calendar.set(Calendar.MINUTE, minute);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            int step = lastRun > 0 ? intervalDays : 1;
+            if (lastRun > 0) {
+                calendar.add(Calendar.DAY_OF_MONTH, intervalDays);
+            }
+            // Jump whole periods rather than stepping over a long gap; DST
+            // can leave it an hour short, which the loop makes up
+            long behind = after - calendar.getTimeInMillis();
+            if (behind > 0) {
+                calendar.add(Calendar.DAY_OF_MONTH, (int) (behind / DAY_MILLIS / step) * step);
+            }
+            while (calendar.getTimeInMillis() <= after) {
+                calendar.add(Calendar.DAY_OF_MONTH, step);
+            }
+            return calendar.getTimeInMillis();
+        }
+        
+        calendar.setTimeInMillis(after);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.MINUTE, 1);
+        
+        // Coarse fields first: a mismatch skips to the start of the next
+        // month, day or hour instead of stepping minute by minute
+        long limit = after + MAX_SEARCH_DAYS * DAY_MILLIS;
+        while (calendar.getTimeInMillis() < limit) {
+            if (!has(months, calendar.get(Calendar.MONTH))) {
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.add(Calendar.MONTH, 1);
+            } else if (!matchesDay(calendar)) {
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            } else if (!has(hours, calendar.get(Calendar.HOUR_OF_DAY))) {
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.add(Calendar.HOUR_OF_DAY, 1);
+            } else if (!has(minutes, calendar.get(Calendar.MINUTE))) {
+                calendar.add(Calendar.MINUTE, 1);
+            } else {
+                return calendar.getTimeInMillis();
+            }
+        }
+        return -1;
+    }
+    
+    // As in cron, if both day fields are restricted either one may match
+    private boolean matchesDay(Calendar calendar) {
+        boolean dayOfMonth = has(daysOfMonth, calendar.get(Calendar.DAY_OF_MONTH));
+        boolean dayOfWeek = has(daysOfWeek, calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+    
+    public String serialize() {
+        if (isInterval()) {
+            return kind + "|" + intervalDays + "|" + formatTime(hour, minute);
+        }
+        if (KIND_WEEKDAYS.equals(kind)) {
+            return kind + "|" + spec + "|" + formatTime(hour, minute);
+        }
+        return kind + "|" + spec;
+    }
+    
+    public static FolderSchedule parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        
+        String[] parts = value.split("\\|", -1);
+        try {
+            if (parts.length == 3 && parts[0].equals(KIND_INTERVAL)) {
+                int[] time = parseTime(parts[2]);
+                return time != null ? interval(Integer.parseInt(parts[1]), time[0], time[1]) : null;
+            }
+            if (parts.length == 3 && parts[0].equals(KIND_WEEKDAYS)) {
+                int[] time = parseTime(parts[2]);
+                int mask = parseWeekdays(parts[1]);
+                return time != null && mask != 0 ? weekdays(mask, time[0], time[1]) : null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (parts.length == 2 && parts[0].equals(KIND_CRON)) {
+            return cron(parts[1]);
+        }
+        return null;
+    }
+    
+    // Human-readable form for the UI
+    public String describe() {
+        if (isInterval()) {
+            return (intervalDays == 1 ? "daily" : "every " + intervalDays + " days") + " at " + formatTime(hour, minute);
+        }
+        if (KIND_WEEKDAYS.equals(kind)) {
+            return spec + " at " + formatTime(hour, minute);
+        }
+        return "cron " + spec;
+    }
+    
+    // Comma-separated values, ranges a-b and steps (*/n or a-b/n)
+    private static long parseField(String field, int min, int max) {
+        long set = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+            }
+            
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                from = parseNumber(part.substring(0, part.indexOf('-')), min, max);
+                to = parseNumber(part.substring(part.indexOf('-') + 1), min, max);
+            } else {
+                from = parseNumber(part, min, max);
+                to = slash >= 0 ? max : from;
+            }
+            if (from < 0 || to < 0 || step < 0) {
+                return 0;
+            }
+            for (int value = from; value <= to; value += step) {
+                set |= 1L << value;
+            }
+        }
+        return set;
+    }
+    
+    // -1 if not a number within range
+    private static int parseNumber(String text, int min, int max) {
+        try {
+            int value = Integer.parseInt(text);
+            return value >= min && value <= max ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static int parseWeekdays(String text) {
+        int mask = 0;
+        for (String name : text.split(",")) {
+            for (int i = 0; i < WEEKDAY_NAMES.length; i++) {
+                if (WEEKDAY_NAMES[i].equals(name.trim().toLowerCase(Locale.ROOT))) {
+                    mask |= 1 << i;
+                }
+            }
+        }
+        return mask;
+    }
+    
+    private static String formatWeekdays(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < WEEKDAY_NAMES.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(WEEKDAY_NAMES[i]);
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static int[] parseTime(String text) {
+        String[] parts = text.split(":");
+        if (parts.length != 2) {
+            return null;
+        }
+        int hour = parseNumber(parts[0], 0, 23);
+        int minute = parseNumber(parts[1], 0, 59);
+        return hour >= 0 && minute >= 0 ? new int[] {hour, minute} : null;
+    }
+    
+    private static String formatTime(int hour, int minute) {
+        return String.format(Locale.US, "%02d:%02d", hour, minute);
+    }
+    
+    private static boolean has(long set, int value) {
+        return (set & (1L << value)) != 0;
+    }
+    
+    private static long bits(int from, int to) {
+        long set = 0;
+        for (int value = from; value <= to; value++) {
+            set |= 1L << value;
+        }
+        return set;
+    }
+    
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+package com.folderdeleter;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Computes folder sizes in parallel and caches what each directory directly
+// contains, keyed by path and the directory's mtime. A directory's mtime only
+// changes when entries are added, removed or renamed in it, so on a repeated
+// query unchanged directories cost one stat instead of a listing plus a stat
+// per file. Files rewritten in place without a rename keep their old size
+// until their directory changes, unless the caller asks for a fresh scan.
+public class FolderSizeService {
+    
+    private static final String TAG = "FolderSizeService";
+    
+    // Cache budget in directory entries plus their subdirectory names
+    private static final int MAX_CACHE_UNITS = 20000;
+    
+    // mtime has one-second resolution, so a directory modified within this
+    // window of being scanned could change again without a visible mtime bump
+    private static final long RACY_WINDOW_MILLIS = 2000;
+    
+    private static FolderSizeService instance;
+    
+    private final ForkJoinPool pool;
+    private final LruCache<String, DirectoryEntry> cache;
+    private final FolderSnapshot snapshot;
+    
+    public static synchronized FolderSizeService getInstance(Context context) {
+        if (instance == null) {
+            instance = new FolderSizeService(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private FolderSizeService(Context appContext) {
+        this.snapshot = FolderSnapshot.getInstance(appContext);
+        this.pool = new ForkJoinPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+        this.cache = new LruCache<String, DirectoryEntry>(MAX_CACHE_UNITS) {
+            @Override
+            protected int sizeOf(String path, DirectoryEntry entry) {
+                return 1 + entry.subdirectories.length;
+            }
+        };
+        
+        appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                    cache.evictAll();
+                } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                    cache.trimToSize(cache.maxSize() / 4);
+                }
+            }
+            
+            @Override
+            public void onLowMemory() {
+                cache.evictAll();
+            }
+            
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+    
+    // Total size in bytes of all files below the folder, or 0 if it cannot be read
+    public long getSize(File folder) {
+        return getSize(folder, false);
+    }
+    
+    // With fresh set, every directory is relisted and every file stat'ed, so
+    // files that grew in place are counted too; the cache is refreshed on the way
+    public long getSize(File folder, boolean fresh) {
+        FileStat stat = FileStat.of(folder);
+        if (!stat.isDirectory()) {
+            return stat.size;
+        }
+        
+        long startTime = System.currentTimeMillis();
+        long size = pool.invoke(new SizeTask(folder, stat.device, fresh));
+        Log.d(TAG, "Size of " + folder.getAbsolutePath() + " computed in "
+            + (System.currentTimeMillis() - startTime) + " ms");
+        
+        snapshot.recordSize(folder, size);
+        snapshot.saveAsync();
+        return size;
+    }
+    
+    // Size from the last computation, possibly from a previous process, or
+    // -1 if the folder has never been measured. Never touches the folder.
+    public long getLastKnownSize(File folder) {
+        return snapshot.getSize(folder);
+    }
+    
+    // Drops cached entries for the folder and everything below it, e.g. after
+    // it has been deleted or staged
+    public void invalidate(File folder) {
+        snapshot.remove(folder);
+        String path = folder.getAbsolutePath();
+        String prefix = path + File.separator;
+        for (String key : cache.snapshot().keySet()) {
+            if (key.equals(path) || key.startsWith(prefix)) {
+                cache.remove(key);
+            }
+        }
+    }
+    
+    private static class DirectoryEntry {
+        
+        final long lastModified;
+        final long fileBytes;
+        final String[] subdirectories;
+        
+        DirectoryEntry(long lastModified, long fileBytes, String[] subdirectories) {
+            this.lastModified = lastModified;
+            this.fileBytes = fileBytes;
+            this.subdirectories = subdirectories;
+        }
+    }
+    
+    // Sums the directory's own files (from the cache when its mtime is
+    // unchanged) and forks one subtask per subdirectory. Subdirectories are
+    // always revisited, since changes inside them do not touch this mtime.
+    // Like TreeWalker, it neither follows symlinks nor crosses mount points.
+    private class SizeTask extends RecursiveTask<Long> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final File dir;
+        private final long device;
+        private final boolean fresh;
+        
+        SizeTask(File dir, long device, boolean fresh) {
+            this.dir = dir;
+            this.device = device;
+            this.fresh = fresh;
+        }
+        
+        @Override
+        protected Long compute() {
+            String path = dir.getAbsolutePath();
+            long lastModified = FileStat.of(dir).lastModified;
+            
+            DirectoryEntry entry = cache.get(path);
+            if (fresh || entry == null || entry.lastModified != lastModified) {
+                entry = scan(lastModified);
+                if (entry == null) {
+                    cache.remove(path);
+                    return 0L;
+                }
+                if (System.currentTimeMillis() - lastModified > RACY_WINDOW_MILLIS) {
+                    cache.put(path, entry);
+                }
+            }
+            
+            List<SizeTask> subtasks = new ArrayList<>(entry.subdirectories.length);
+            for (String name : entry.subdirectories) {
+                subtasks.add(new SizeTask(new File(dir, name), device, fresh));
+            }
+            invokeAll(subtasks);
+            
+            long size = entry.fileBytes;
+            for (SizeTask subtask : subtasks) {
+                size += subtask.join();
+            }
+            return size;
+        }
+        
+        private DirectoryEntry scan(long lastModified) {
+            TreeWalker.DirectoryCursor cursor = TreeWalker.open(dir);
+            if (cursor == null) {
+                return null;
+            }
+            
+            long fileBytes = 0;
+            List<String> subdirectories = new ArrayList<>();
+            try {
+                File child;
+                while ((child = cursor.next()) != null) {
+                    // One lstat per entry instead of isDirectory() plus length()
+                    FileStat stat = FileStat.lstat(child);
+                    if (stat.isSymbolicLink() || stat.isOnOtherDevice(device)) {
+                        continue;
+                    }
+                    if (stat.isDirectory()) {
+                        subdirectories.add(child.getName());
+                    } else {
+                        fileBytes += stat.size;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            
+            return new DirectoryEntry(lastModified, fileBytes, subdirectories.toArray(new String[0]));
+        }
+    }
+}
\ No newline at end of file
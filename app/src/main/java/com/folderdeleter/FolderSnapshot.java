@@ -0,0 +1,569 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Compact on-disk snapshot of the folders the picker has listed and the sizes
+// computed for them, so both can be shown before anything is rescanned.
+//
+// The file is memory-mapped and read in place: a header, one fixed-size
+// record per folder, then a blob of UTF-8 name segments. Records are written
+// breadth-first so a folder's children are contiguous and sorted, which lets
+// a path be resolved by binary search one segment at a time. Changes made
+// since loading are kept in an overlay and merged in when the snapshot is
+// saved.
+public class FolderSnapshot {
+    
+    private static final String TAG = "FolderSnapshot";
+    private static final String SNAPSHOT_FILE = "folder.snapshot";
+    
+    // "FDS2"; FDS1 listings still held dot and protected folders
+    private static final int MAGIC = 0x46445332;
+    private static final int HEADER_SIZE = 16;
+    
+    private static final int FIELD_PARENT = 0;
+    private static final int FIELD_FIRST_CHILD = 4;
+    private static final int FIELD_CHILD_COUNT = 8;
+    private static final int FIELD_FLAGS = 12;
+    private static final int FIELD_NAME_OFFSET = 16;
+    private static final int FIELD_NAME_LENGTH = 20;
+    private static final int FIELD_LAST_MODIFIED = 24;
+    private static final int FIELD_SIZE = 32;
+    private static final int RECORD_SIZE = 40;
+    
+    // Children of this folder were listed when it had the recorded mtime
+    private static final int FLAG_LISTED = 1;
+    // The size field holds a computed subtree size
+    private static final int FLAG_SIZED = 2;
+    // This folder appears in its parent's listing, rather than being present
+    // only because its size was recorded
+    private static final int FLAG_IN_LISTING = 4;
+    
+    // Changed folders re-listed per reconciliation pass; the rest keep their
+    // stale listing, which is never served because its mtime no longer matches
+    private static final int MAX_RELISTS_PER_RECONCILE = 64;
+    
+    // Total order that matches how the picker sorts folder names
+    private static final Comparator<String> NAME_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+            return result != 0 ? result : a.compareTo(b);
+        }
+    };
+    
+    private static FolderSnapshot instance;
+    
+    private final File snapshotFile;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    
+    private ByteBuffer mapped;
+    private int nodeCount;
+    private int rootCount;
+    private final Map<String, Entry> overlay = new HashMap<>();
+    private long overlayVersion;
+    
+    public static synchronized FolderSnapshot getInstance(Context context) {
+        if (instance == null) {
+            instance = new FolderSnapshot(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private FolderSnapshot(Context appContext) {
+        this.snapshotFile = new File(appContext.getFilesDir(), SNAPSHOT_FILE);
+        map();
+    }
+    
+    private static class Entry {
+        
+        long lastModified;
+        List<String> childPaths;
+        long size = -1;
+        boolean removed;
+        
+        Entry copy() {
+            Entry entry = new Entry();
+            entry.lastModified = lastModified;
+            entry.childPaths = childPaths;
+            entry.size = size;
+            entry.removed = removed;
+            return entry;
+        }
+    }
+    
+    // Child folder paths recorded when the folder had this mtime, or null
+    public synchronized List<String> getChildren(File dir, long lastModified) {
+        String path = dir.getAbsolutePath();
+        Entry entry = overlay.get(path);
+        if (entry != null) {
+            return !entry.removed && entry.childPaths != null && entry.lastModified == lastModified
+                ? entry.childPaths : null;
+        }
+        
+        int node = find(path);
+        if (node < 0 || (flags(node) & FLAG_LISTED) == 0 || recordLong(node, FIELD_LAST_MODIFIED) != lastModified) {
+            return null;
+        }
+        return childPaths(node, path);
+    }
+    
+    // Last computed size of the folder in bytes, or -1 if none was recorded
+    public synchronized long getSize(File dir) {
+        String path = dir.getAbsolutePath();
+        Entry entry = overlay.get(path);
+        if (entry != null) {
+            return entry.removed ? -1 : entry.size;
+        }
+        
+        int node = find(path);
+        return node >= 0 && (flags(node) & FLAG_SIZED) != 0 ? recordLong(node, FIELD_SIZE) : -1;
+    }
+    
+    public synchronized void recordChildren(File dir, long lastModified, List<String> sortedPaths) {
+        Entry entry = overlayEntry(dir.getAbsolutePath());
+        entry.lastModified = lastModified;
+        entry.childPaths = sortedPaths;
+        overlayVersion++;
+        dirty.set(true);
+    }
+    
+    public synchronized void recordSize(File dir, long size) {
+        Entry entry = overlayEntry(dir.getAbsolutePath());
+        entry.size = size;
+        overlayVersion++;
+        dirty.set(true);
+    }
+    
+    public synchronized void remove(File dir) {
+        Entry entry = overlayEntry(dir.getAbsolutePath());
+        entry.removed = true;
+        entry.childPaths = null;
+        entry.size = -1;
+        overlayVersion++;
+        dirty.set(true);
+    }
+    
+    // Checks every listed folder against the live filesystem in the
+    // background. Unchanged listings are handed to the tree cache as-is;
+    // changed ones are listed again, up to a per-pass budget.
+    public void reconcileAsync(final FolderTree folderTree) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = System.currentTimeMillis();
+                Map<String, Entry> entries;
+                synchronized (FolderSnapshot.this) {
+                    entries = decodeAll();
+                }
+                
+                int unchanged = 0;
+                int relisted = 0;
+                for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                    Entry entry = item.getValue();
+                    if (entry.childPaths == null) {
+                        continue;
+                    }
+                    
+                    File dir = new File(item.getKey());
+                    FileStat stat = FileStat.of(dir);
+                    if (!stat.isDirectory()) {
+                        remove(dir);
+                        continue;
+                    }
+                    
+                    long lastModified = stat.lastModified;
+                    if (lastModified == entry.lastModified) {
+                        folderTree.seed(dir, lastModified, entry.childPaths);
+                        unchanged++;
+                    } else if (relisted < MAX_RELISTS_PER_RECONCILE) {
+                        folderTree.listChildren(dir);
+                        relisted++;
+                    }
+                }
+                
+                Log.d(TAG, "Reconciled snapshot in " + (System.currentTimeMillis() - startTime) + " ms: "
+                    + unchanged + " unchanged, " + relisted + " relisted");
+                save();
+            }
+        });
+    }
+    
+    // Writes the snapshot in the background if anything changed since the last save
+    public void saveAsync() {
+        if (!dirty.get()) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+    
+    private void save() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        
+        Map<String, Entry> entries;
+        long version;
+        synchronized (this) {
+            entries = decodeAll();
+            version = overlayVersion;
+        }
+        
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(encode(entries).array());
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write folder snapshot", e);
+            tempFile.delete();
+            dirty.set(true);
+            return;
+        }
+        
+        synchronized (this) {
+            if (!tempFile.renameTo(snapshotFile)) {
+                Log.w(TAG, "Could not replace folder snapshot");
+                tempFile.delete();
+                dirty.set(true);
+                return;
+            }
+            // If anything was recorded while writing, the overlay is kept; it
+            // is a superset of what was written, so it stays correct on top
+            if (overlayVersion == version) {
+                overlay.clear();
+            }
+            map();
+        }
+    }
+    
+    private void map() {
+        mapped = null;
+        nodeCount = 0;
+        rootCount = 0;
+        if (!snapshotFile.exists()) {
+            return;
+        }
+        
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "r")) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                Log.w(TAG, "Ignoring unrecognised folder snapshot");
+                return;
+            }
+            int count = buffer.getInt(4);
+            int roots = buffer.getInt(8);
+            int namesOffset = buffer.getInt(12);
+            if (count < 0 || roots < 0 || roots > count
+                    || namesOffset != HEADER_SIZE + (long) count * RECORD_SIZE || namesOffset > buffer.capacity()) {
+                Log.w(TAG, "Ignoring truncated folder snapshot");
+                return;
+            }
+            if (!isConsistent(buffer, count, roots, namesOffset)) {
+                // Every later read trusts the records, so a damaged file is
+                // dropped and the snapshot starts empty
+                Log.w(TAG, "Discarding corrupt folder snapshot");
+                snapshotFile.delete();
+                return;
+            }
+            mapped = buffer;
+            nodeCount = count;
+            rootCount = roots;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not map folder snapshot", e);
+        }
+    }
+    
+    // Checks that every record points inside the file: parents come before
+    // their children (breadth-first order), child ranges lie past the node
+    // and within the records, and names lie within the name area
+    private static boolean isConsistent(ByteBuffer buffer, int count, int roots, int namesOffset) {
+        for (int node = 0; node < count; node++) {
+            int record = HEADER_SIZE + node * RECORD_SIZE;
+            int parent = buffer.getInt(record + FIELD_PARENT);
+            if (node < roots ? parent != -1 : parent < 0 || parent >= node) {
+                return false;
+            }
+            int firstChild = buffer.getInt(record + FIELD_FIRST_CHILD);
+            int childCount = buffer.getInt(record + FIELD_CHILD_COUNT);
+            if (childCount < 0 || (childCount > 0
+                    && (firstChild <= node || (long) firstChild + childCount > count))) {
+                return false;
+            }
+            int nameOffset = buffer.getInt(record + FIELD_NAME_OFFSET);
+            int nameLength = buffer.getInt(record + FIELD_NAME_LENGTH);
+            if (nameOffset < namesOffset || nameLength < 0 || (long) nameOffset + nameLength > buffer.capacity()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Resolves a path to its record index, or -1
+    private int find(String path) {
+        for (int root = 0; root < rootCount; root++) {
+            String rootPath = name(root);
+            if (path.equals(rootPath)) {
+                return root;
+            }
+            if (!path.startsWith(rootPath + File.separator)) {
+                continue;
+            }
+            
+            int node = root;
+            for (String segment : path.substring(rootPath.length() + 1).split(File.separator)) {
+                node = findChild(node, segment);
+                if (node < 0) {
+                    break;
+                }
+            }
+            if (node >= 0) {
+                return node;
+            }
+        }
+        return -1;
+    }
+    
+    private int findChild(int parent, String name) {
+        int low = recordInt(parent, FIELD_FIRST_CHILD);
+        int high = low + recordInt(parent, FIELD_CHILD_COUNT) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = NAME_ORDER.compare(name(mid), name);
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    // Listed children only; folders recorded under the node just for their size are skipped
+    private List<String> childPaths(int node, String path) {
+        int first = recordInt(node, FIELD_FIRST_CHILD);
+        int count = recordInt(node, FIELD_CHILD_COUNT);
+        List<String> paths = new ArrayList<>(count);
+        for (int child = first; child < first + count; child++) {
+            if ((flags(child) & FLAG_IN_LISTING) != 0) {
+                paths.add(path + File.separator + name(child));
+            }
+        }
+        return Collections.unmodifiableList(paths);
+    }
+    
+    private int flags(int node) {
+        return recordInt(node, FIELD_FLAGS);
+    }
+    
+    private String name(int node) {
+        int offset = recordInt(node, FIELD_NAME_OFFSET);
+        int length = recordInt(node, FIELD_NAME_LENGTH);
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = mapped.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private int recordInt(int node, int field) {
+        return mapped.getInt(HEADER_SIZE + node * RECORD_SIZE + field);
+    }
+    
+    private long recordLong(int node, int field) {
+        return mapped.getLong(HEADER_SIZE + node * RECORD_SIZE + field);
+    }
+    
+    private Entry overlayEntry(String path) {
+        Entry entry = overlay.get(path);
+        if (entry == null) {
+            entry = new Entry();
+            int node = find(path);
+            if (node >= 0) {
+                entry.lastModified = recordLong(node, FIELD_LAST_MODIFIED);
+                if ((flags(node) & FLAG_LISTED) != 0) {
+                    entry.childPaths = childPaths(node, path);
+                }
+                if ((flags(node) & FLAG_SIZED) != 0) {
+                    entry.size = recordLong(node, FIELD_SIZE);
+                }
+            }
+            overlay.put(path, entry);
+        }
+        entry.removed = false;
+        return entry;
+    }
+    
+    // Mapped records merged with the overlay, keyed by absolute path
+    private Map<String, Entry> decodeAll() {
+        Map<String, Entry> entries = new HashMap<>();
+        
+        if (mapped != null) {
+            String[] paths = new String[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                int parent = recordInt(node, FIELD_PARENT);
+                paths[node] = parent < 0 ? name(node) : paths[parent] + File.separator + name(node);
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                int flags = flags(node);
+                if ((flags & (FLAG_LISTED | FLAG_SIZED)) == 0) {
+                    continue;
+                }
+                Entry entry = new Entry();
+                entry.lastModified = recordLong(node, FIELD_LAST_MODIFIED);
+                if ((flags & FLAG_LISTED) != 0) {
+                    entry.childPaths = childPaths(node, paths[node]);
+                }
+                if ((flags & FLAG_SIZED) != 0) {
+                    entry.size = recordLong(node, FIELD_SIZE);
+                }
+                entries.put(paths[node], entry);
+            }
+        }
+        
+        for (Map.Entry<String, Entry> item : overlay.entrySet()) {
+            if (item.getValue().removed) {
+                entries.remove(item.getKey());
+            } else {
+                // Copied, since the overlay can change while the result is encoded
+                entries.put(item.getKey(), item.getValue().copy());
+            }
+        }
+        return entries;
+    }
+    
+    private static class Node {
+        
+        final String path;
+        final Entry entry;
+        final List<Node> children = new ArrayList<>();
+        String name;
+        boolean inListing;
+        int index;
+        int parentIndex = -1;
+        
+        Node(String path, Entry entry) {
+            this.path = path;
+            this.entry = entry;
+        }
+    }
+    
+    private static ByteBuffer encode(Map<String, Entry> entries) {
+        Map<String, Node> nodes = new HashMap<>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            nodes.put(item.getKey(), new Node(item.getKey(), item.getValue()));
+        }
+        
+        // Every listed child becomes a node too, so its parent can list it
+        for (Entry entry : entries.values()) {
+            if (entry.childPaths == null) {
+                continue;
+            }
+            for (String childPath : entry.childPaths) {
+                Node child = nodes.get(childPath);
+                if (child == null) {
+                    child = new Node(childPath, null);
+                    nodes.put(childPath, child);
+                }
+                child.inListing = true;
+            }
+        }
+        
+        Comparator<Node> nodeOrder = new Comparator<Node>() {
+            @Override
+            public int compare(Node a, Node b) {
+                return NAME_ORDER.compare(a.name, b.name);
+            }
+        };
+        
+        // Nodes without a recorded parent become roots named by their full path
+        List<Node> roots = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            File file = new File(node.path);
+            Node parent = file.getParent() != null ? nodes.get(file.getParent()) : null;
+            if (parent != null) {
+                node.name = file.getName();
+                parent.children.add(node);
+            } else {
+                node.name = node.path;
+                roots.add(node);
+            }
+        }
+        Collections.sort(roots, nodeOrder);
+        
+        // Breadth-first so that each node's children end up contiguous
+        List<Node> order = new ArrayList<>(nodes.size());
+        Deque<Node> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            node.index = order.size();
+            order.add(node);
+            Collections.sort(node.children, nodeOrder);
+            for (Node child : node.children) {
+                child.parentIndex = node.index;
+                queue.add(child);
+            }
+        }
+        
+        byte[][] names = new byte[order.size()][];
+        int namesLength = 0;
+        for (int i = 0; i < order.size(); i++) {
+            names[i] = order.get(i).name.getBytes(StandardCharsets.UTF_8);
+            namesLength += names[i].length;
+        }
+        
+        int namesOffset = HEADER_SIZE + order.size() * RECORD_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(namesOffset + namesLength);
+        buffer.putInt(MAGIC).putInt(order.size()).putInt(roots.size()).putInt(namesOffset);
+        
+        int nameOffset = namesOffset;
+        for (int i = 0; i < order.size(); i++) {
+            Node node = order.get(i);
+            Entry entry = node.entry;
+            int flags = (node.inListing ? FLAG_IN_LISTING : 0)
+                | (entry != null && entry.childPaths != null ? FLAG_LISTED : 0)
+                | (entry != null && entry.size >= 0 ? FLAG_SIZED : 0);
+            
+            buffer.putInt(node.parentIndex);
+            buffer.putInt(node.children.isEmpty() ? 0 : node.children.get(0).index);
+            buffer.putInt(node.children.size());
+            buffer.putInt(flags);
+            buffer.putInt(nameOffset);
+            buffer.putInt(names[i].length);
+            buffer.putLong(entry != null ? entry.lastModified : 0);
+            buffer.putLong(entry != null ? entry.size : -1);
+            nameOffset += names[i].length;
+        }
+        for (byte[] name : names) {
+            buffer.put(name);
+        }
+        return buffer;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,201 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.os.Environment;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lazy folder tree behind the picker. Nothing is enumerated up front: a
+// folder's children are listed when it is opened, kept in a bounded LRU
+// keyed by path and checked against the folder's mtime, and the folders
+// the user is likely to open next are listed ahead in the background.
+// Listings are also recorded in the persistent FolderSnapshot, which
+// answers LRU misses until the live filesystem has been reconciled.
+public class FolderTree {
+    
+    private static final String TAG = "FolderTree";
+    
+    // Cache budget in expanded folders plus their child paths
+    private static final int MAX_CACHE_UNITS = 20000;
+    
+    // Prefetch is limited to what is on screen, and this many folders at most
+    private static final int MAX_PREFETCH = 16;
+    
+    // mtime has one-second resolution, so a listing taken this soon after a
+    // change might miss a second change in the same second
+    private static final long RACY_WINDOW_MILLIS = 2000;
+    
+    private static FolderTree instance;
+    
+    private final LruCache<String, Children> cache = new LruCache<String, Children>(MAX_CACHE_UNITS) {
+        @Override
+        protected int sizeOf(String path, Children children) {
+            return 1 + children.paths.size();
+        }
+    };
+    
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FolderTreePrefetch");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    private final AtomicInteger prefetchGeneration = new AtomicInteger();
+    private final FolderSnapshot snapshot;
+    
+    public static synchronized FolderTree getInstance(Context context) {
+        if (instance == null) {
+            instance = new FolderTree(FolderSnapshot.getInstance(context));
+            instance.snapshot.reconcileAsync(instance);
+        }
+        return instance;
+    }
+    
+    private FolderTree(FolderSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+    
+    private static class Children {
+        
+        final long lastModified;
+        final List<String> paths;
+        
+        Children(long lastModified, List<String> paths) {
+            this.lastModified = lastModified;
+            this.paths = paths;
+        }
+    }
+    
+    // Top-level entries shown before anything is expanded; only existence is checked
+    public List<File> getRoots() {
+        List<File> roots = new ArrayList<>();
+        File externalStorage = Environment.getExternalStorageDirectory();
+        if (externalStorage == null || !externalStorage.isDirectory()) {
+            return roots;
+        }
+        
+        roots.add(externalStorage);
+        addIfDirectory(roots, new File(externalStorage, "Android/data"));
+        addIfDirectory(roots, Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS));
+        addIfDirectory(roots, Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES));
+        addIfDirectory(roots, Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES));
+        return roots;
+    }
+    
+    // Dot folders and folders that are, or contain, a protected tree are
+    // never offered, as before the tree was listed lazily
+    public static boolean isVisibleFolder(File file) {
+        return !file.getName().startsWith(".") && file.isDirectory()
+            && !ProtectedPaths.getInstance().isCritical(file.getAbsolutePath());
+    }
+    
+    // Cached sorted child paths, or null if the folder has not been listed
+    // since it last changed
+    public List<String> getCachedChildren(File dir) {
+        long lastModified = FileStat.of(dir).lastModified;
+        Children children = cache.get(dir.getAbsolutePath());
+        if (children != null && children.lastModified == lastModified) {
+            return children.paths;
+        }
+        
+        List<String> snapshotPaths = snapshot.getChildren(dir, lastModified);
+        if (snapshotPaths != null) {
+            seed(dir, lastModified, snapshotPaths);
+            return snapshotPaths;
+        }
+        
+        if (children != null) {
+            cache.remove(dir.getAbsolutePath());
+        }
+        return null;
+    }
+    
+    // Stores a complete listing. lastModified must be read before the
+    // listing started so a change made during it invalidates the entry.
+    public void putChildren(File dir, long lastModified, List<String> sortedPaths) {
+        if (System.currentTimeMillis() - lastModified > RACY_WINDOW_MILLIS) {
+            List<String> paths = Collections.unmodifiableList(sortedPaths);
+            seed(dir, lastModified, paths);
+            snapshot.recordChildren(dir, lastModified, paths);
+        }
+    }
+    
+    // Caches a listing already known to match the folder's current mtime
+    void seed(File dir, long lastModified, List<String> sortedPaths) {
+        cache.put(dir.getAbsolutePath(), new Children(lastModified, sortedPaths));
+    }
+    
+    // Lists and caches a folder's children on the calling thread
+    public List<String> listChildren(File dir) {
+        List<String> cached = getCachedChildren(dir);
+        if (cached != null) {
+            return cached;
+        }
+        
+        long lastModified = FileStat.of(dir).lastModified;
+        TreeWalker.DirectoryCursor cursor = TreeWalker.open(dir);
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+        
+        List<String> paths = new ArrayList<>();
+        try {
+            File child;
+            while ((child = cursor.next()) != null) {
+                if (isVisibleFolder(child)) {
+                    paths.add(child.getAbsolutePath());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        
+        Collections.sort(paths, String.CASE_INSENSITIVE_ORDER);
+        putChildren(dir, lastModified, paths);
+        return paths;
+    }
+    
+    // Lists the given folders ahead of time in the background. A newer
+    // request supersedes any prefetch still running.
+    public void prefetch(List<String> folderPaths) {
+        final int generation = prefetchGeneration.incrementAndGet();
+        final List<String> targets = new ArrayList<>(
+            folderPaths.subList(0, Math.min(folderPaths.size(), MAX_PREFETCH)));
+        
+        prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String path : targets) {
+                    if (prefetchGeneration.get() != generation) {
+                        return;
+                    }
+                    try {
+                        listChildren(new File(path));
+                    } catch (SecurityException e) {
+                        Log.w(TAG, "Cannot prefetch " + path);
+                    }
+                }
+            }
+        });
+    }
+    
+    public void cancelPrefetch() {
+        prefetchGeneration.incrementAndGet();
+    }
+    
+    private void addIfDirectory(List<File> roots, File dir) {
+        if (dir.isDirectory() && !roots.contains(dir)) {
+            roots.add(dir);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,612 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.util.Log;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps running file and byte counts for the selected folders using inotify
+// (FileObserver), so sizes and "is there anything to clean" can be answered
+// without walking the tree. inotify watches are per directory and limited
+// per user, so only MAX_WATCHES directories are watched in total; a folder
+// that does not fit is rescanned periodically instead.
+//
+// The same counts drive size-threshold cleanup: a folder whose byte count
+// reaches its threshold is handed to the ThresholdListener for a run of its
+// own, and is not triggered again until it has grown back by a step.
+//
+// All watch state is confined to a single executor thread; FileObserver
+// callbacks are forwarded to it in order. Counters can be read from any thread.
+public class FolderWatcher {
+    
+    private static final String TAG = "FolderWatcher";
+    
+    // The kernel default is 8192 watches per user, shared with everything
+    // else running under this uid
+    private static final int MAX_WATCHES = 4096;
+    
+    // Each tracked file costs a map entry, so memory is bounded as well
+    private static final int MAX_TRACKED_FILES = 100000;
+    
+    private static final long RESCAN_INTERVAL_MINUTES = 15;
+    
+    // After a threshold run that left the folder above its threshold, it must
+    // grow by this fraction of the threshold before it is triggered again
+    private static final int REGROWTH_DIVISOR = 10;
+    
+    // A folder filling faster than this still gets at most one run per interval
+    private static final long MIN_TRIGGER_INTERVAL_MILLIS = 5 * 60 * 1000L;
+    
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.CLOSE_WRITE
+        | FileObserver.MOVED_TO | FileObserver.MOVED_FROM | FileObserver.DELETE
+        | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+    
+    // inotify IN_Q_OVERFLOW: events were dropped and the counts cannot be trusted
+    private static final int EVENT_QUEUE_OVERFLOW = 0x00004000;
+    
+    private static FolderWatcher instance;
+    
+    private final Context appContext;
+    private final SettingsManager settingsManager;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, WatchedFolder> folders = new HashMap<>();
+    private final Map<String, WatchedFolder> published = new HashMap<>();
+    
+    private volatile ThresholdListener thresholdListener;
+    private int watchCount;
+    private int trackedFileCount;
+    private ScheduledFuture<?> rescanFuture;
+    
+    public static synchronized FolderWatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new FolderWatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private FolderWatcher(Context appContext) {
+        this.appContext = appContext;
+        this.settingsManager = new SettingsManager(appContext);
+    }
+    
+    // Counts for one selected folder. Added and removed counters cover the
+    // time since the folder was last (re)scanned.
+    public static class Stats {
+        
+        public final long fileCount;
+        public final long byteCount;
+        public final long filesAdded;
+        public final long filesRemoved;
+        public final long bytesAdded;
+        public final long bytesRemoved;
+        // True while inotify keeps the counts current; false when they come
+        // from the last periodic rescan
+        public final boolean live;
+        
+        Stats(WatchedFolder folder) {
+            this.fileCount = folder.fileCount.get();
+            this.byteCount = folder.byteCount.get();
+            this.filesAdded = folder.filesAdded.get();
+            this.filesRemoved = folder.filesRemoved.get();
+            this.bytesAdded = folder.bytesAdded.get();
+            this.bytesRemoved = folder.bytesRemoved.get();
+            this.live = !folder.polled;
+        }
+    }
+    
+    public interface ThresholdListener {
+        // Called on the watcher thread. Returns true if a cleanup run was
+        // started, in which case thresholdRunFinished must follow.
+        boolean onThresholdReached(String folderPath, long byteCount);
+    }
+    
+    public void setThresholdListener(ThresholdListener listener) {
+        thresholdListener = listener;
+    }
+    
+    // Re-arms the threshold once the run, and the rescan it requested, are done
+    public void thresholdRunFinished(final String folderPath) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                WatchedFolder folder = folders.get(folderPath);
+                if (folder != null && folder.runPending) {
+                    folder.runPending = false;
+                    rearmThreshold(folder);
+                    checkThreshold(folder);
+                }
+            }
+        });
+    }
+    
+    // Current counts, or null if the folder is not watched or not scanned yet
+    public Stats getStats(String folderPath) {
+        WatchedFolder folder;
+        synchronized (published) {
+            folder = published.get(folderPath);
+        }
+        return folder != null && folder.scanned ? new Stats(folder) : null;
+    }
+    
+    // Starts watching newly selected folders and drops deselected ones
+    public void refresh() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Set<String> selected = new HashSet<>(settingsManager.getSelectedFolders());
+                
+                Iterator<Map.Entry<String, WatchedFolder>> iterator = folders.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<String, WatchedFolder> item = iterator.next();
+                    if (!selected.contains(item.getKey())) {
+                        releaseWatches(item.getValue());
+                        iterator.remove();
+                    }
+                }
+                
+                for (String path : selected) {
+                    WatchedFolder folder = folders.get(path);
+                    if (folder == null) {
+                        folder = new WatchedFolder(new File(path));
+                        folders.put(path, folder);
+                        scan(folder);
+                    } else if (folder.polled) {
+                        // Budget may have been freed since it fell back to polling
+                        scan(folder);
+                    }
+                    folder.setSizeThreshold(settingsManager.getSizeThreshold(path));
+                    checkThreshold(folder);
+                }
+                
+                publish();
+                scheduleRescans();
+            }
+        });
+    }
+    
+    // Rebuilds the counts for a folder from scratch, e.g. after a deletion run
+    public void rescan(final String folderPath) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                WatchedFolder folder = folders.get(folderPath);
+                if (folder != null) {
+                    scan(folder);
+                }
+            }
+        });
+    }
+    
+    public void stop() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (WatchedFolder folder : folders.values()) {
+                    releaseWatches(folder);
+                }
+                folders.clear();
+                publish();
+                if (rescanFuture != null) {
+                    rescanFuture.cancel(false);
+                    rescanFuture = null;
+                }
+            }
+        });
+    }
+    
+    private void publish() {
+        synchronized (published) {
+            published.clear();
+            published.putAll(folders);
+        }
+    }
+    
+    private void scheduleRescans() {
+        if (rescanFuture != null) {
+            return;
+        }
+        rescanFuture = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (WatchedFolder folder : folders.values()) {
+                    if (folder.polled) {
+                        poll(folder);
+                        checkThreshold(folder);
+                    }
+                }
+            }
+        }, RESCAN_INTERVAL_MINUTES, RESCAN_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+    
+    private static class WatchedFolder {
+        
+        final File root;
+        final Map<String, DirectoryWatch> watches = new HashMap<>();
+        final AtomicLong fileCount = new AtomicLong();
+        final AtomicLong byteCount = new AtomicLong();
+        final AtomicLong filesAdded = new AtomicLong();
+        final AtomicLong filesRemoved = new AtomicLong();
+        final AtomicLong bytesAdded = new AtomicLong();
+        final AtomicLong bytesRemoved = new AtomicLong();
+        volatile boolean scanned;
+        volatile boolean polled;
+        
+        long sizeThreshold;
+        // Byte count at which the next threshold run fires
+        long triggerBytes = Long.MAX_VALUE;
+        long lastTriggerTime;
+        boolean runPending;
+        boolean checkScheduled;
+        
+        WatchedFolder(File root) {
+            this.root = root;
+        }
+        
+        void setSizeThreshold(long bytes) {
+            if (bytes != sizeThreshold) {
+                sizeThreshold = bytes;
+                triggerBytes = bytes > 0 ? bytes : Long.MAX_VALUE;
+            }
+        }
+        
+        void fileAdded(long size) {
+            fileCount.incrementAndGet();
+            byteCount.addAndGet(size);
+            filesAdded.incrementAndGet();
+            bytesAdded.addAndGet(size);
+        }
+        
+        void fileRemoved(long size) {
+            fileCount.decrementAndGet();
+            byteCount.addAndGet(-size);
+            filesRemoved.incrementAndGet();
+            bytesRemoved.addAndGet(size);
+        }
+        
+        void fileResized(long oldSize, long newSize) {
+            byteCount.addAndGet(newSize - oldSize);
+            if (newSize > oldSize) {
+                bytesAdded.addAndGet(newSize - oldSize);
+            } else {
+                bytesRemoved.addAndGet(oldSize - newSize);
+            }
+        }
+        
+        void resetCounters(long files, long bytes) {
+            fileCount.set(files);
+            byteCount.set(bytes);
+            filesAdded.set(0);
+            filesRemoved.set(0);
+            bytesAdded.set(0);
+            bytesRemoved.set(0);
+        }
+    }
+    
+    private class DirectoryWatch extends FileObserver {
+        
+        final WatchedFolder folder;
+        final File dir;
+        final Map<String, Long> fileSizes = new HashMap<>();
+        final Set<String> subdirectories = new HashSet<>();
+        boolean active = true;
+        
+        // The File constructor needs API 29
+        @SuppressWarnings("deprecation")
+        DirectoryWatch(WatchedFolder folder, File dir) {
+            super(dir.getAbsolutePath(), WATCH_MASK);
+            this.folder = folder;
+            this.dir = dir;
+        }
+        
+        @Override
+        public void onEvent(final int event, final String name) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleEvent(DirectoryWatch.this, event, name);
+                }
+            });
+        }
+    }
+    
+    private void handleEvent(DirectoryWatch watch, int event, String name) {
+        WatchedFolder folder = watch.folder;
+        if (!watch.active || folder.polled) {
+            return;
+        }
+        
+        if ((event & EVENT_QUEUE_OVERFLOW) != 0) {
+            Log.w(TAG, "inotify queue overflowed, rescanning " + folder.root.getAbsolutePath());
+            scan(folder);
+            return;
+        }
+        
+        int type = event & FileObserver.ALL_EVENTS;
+        if (type == FileObserver.DELETE_SELF || type == FileObserver.MOVE_SELF) {
+            // Subdirectories are handled through their parent's event
+            if (watch.dir.equals(folder.root)) {
+                scan(folder);
+            }
+            return;
+        }
+        if (name == null) {
+            return;
+        }
+        
+        File child = new File(watch.dir, name);
+        switch (type) {
+            case FileObserver.CREATE:
+            case FileObserver.MOVED_TO:
+                // Symlinks are not counted, as in a full scan
+                FileStat stat = FileStat.lstat(child);
+                if (stat.isDirectory()) {
+                    if (watch.subdirectories.add(name) && !addSubtree(folder, child, true)) {
+                        fallBackToPolling(folder);
+                    }
+                } else if (type == FileObserver.MOVED_TO && !stat.isSymbolicLink()) {
+                    updateFile(watch, name, child);
+                }
+                break;
+            case FileObserver.CLOSE_WRITE:
+                updateFile(watch, name, child);
+                break;
+            case FileObserver.DELETE:
+            case FileObserver.MOVED_FROM:
+                if (watch.subdirectories.remove(name)) {
+                    removeSubtree(folder, child);
+                } else {
+                    Long size = watch.fileSizes.remove(name);
+                    if (size != null) {
+                        trackedFileCount--;
+                        folder.fileRemoved(size);
+                    }
+                }
+                break;
+            default:
+                return;
+        }
+        checkThreshold(folder);
+    }
+    
+    private void updateFile(DirectoryWatch watch, String name, File file) {
+        long size = file.length();
+        Long previous = watch.fileSizes.put(name, size);
+        if (previous == null) {
+            if (++trackedFileCount > MAX_TRACKED_FILES) {
+                fallBackToPolling(watch.folder);
+                return;
+            }
+            watch.folder.fileAdded(size);
+        } else if (previous != size) {
+            watch.folder.fileResized(previous, size);
+        }
+    }
+    
+    // Full walk that re-establishes the counts and, budget permitting, the watches
+    private void scan(WatchedFolder folder) {
+        releaseWatches(folder);
+        folder.polled = false;
+        
+        long startTime = System.currentTimeMillis();
+        if (!folder.root.isDirectory()) {
+            folder.resetCounters(0, 0);
+        } else if (!addSubtree(folder, folder.root, false)) {
+            fallBackToPolling(folder);
+        } else {
+            long files = 0;
+            long bytes = 0;
+            for (DirectoryWatch watch : folder.watches.values()) {
+                files += watch.fileSizes.size();
+                for (long size : watch.fileSizes.values()) {
+                    bytes += size;
+                }
+            }
+            folder.resetCounters(files, bytes);
+        }
+        
+        folder.scanned = true;
+        checkThreshold(folder);
+        Log.d(TAG, "Scanned " + folder.root.getAbsolutePath() + " in " + (System.currentTimeMillis() - startTime)
+            + " ms: " + folder.fileCount.get() + " files, " + folder.watches.size() + " watches"
+            + (folder.polled ? " (polling)" : ""));
+    }
+    
+    // Watches every directory below dir and records its files, counting them
+    // as additions if asked. Returns false if the watch or file budget ran
+    // out; the caller then falls back to polling.
+    private boolean addSubtree(final WatchedFolder folder, File dir, final boolean countAsAdded) {
+        final boolean[] withinBudget = {true};
+        
+        TreeWalker.walk(dir, TreeWalker.UNLIMITED_DEPTH, new TreeWalker.Visitor() {
+            private final List<DirectoryWatch> stack = new ArrayList<>();
+            
+            @Override
+            public boolean preVisitDirectory(File directory, int depth) {
+                if (folder.watches.containsKey(directory.getAbsolutePath())) {
+                    return false;
+                }
+                if (watchCount >= MAX_WATCHES) {
+                    withinBudget[0] = false;
+                    return false;
+                }
+                
+                DirectoryWatch watch = new DirectoryWatch(folder, directory);
+                // Start watching before listing so nothing created meanwhile is missed
+                watch.startWatching();
+                watchCount++;
+                folder.watches.put(directory.getAbsolutePath(), watch);
+                
+                if (!stack.isEmpty()) {
+                    stack.get(stack.size() - 1).subdirectories.add(directory.getName());
+                }
+                stack.add(watch);
+                return true;
+            }
+            
+            @Override
+            public boolean visitFile(File file, FileStat stat, int depth) {
+                if (stack.isEmpty()) {
+                    // dir was replaced by a file before the walk started
+                    return true;
+                }
+                if (trackedFileCount >= MAX_TRACKED_FILES) {
+                    withinBudget[0] = false;
+                    return false;
+                }
+                
+                DirectoryWatch watch = stack.get(stack.size() - 1);
+                long size = stat.size;
+                if (watch.fileSizes.put(file.getName(), size) == null) {
+                    trackedFileCount++;
+                    if (countAsAdded) {
+                        folder.fileAdded(size);
+                    }
+                }
+                return true;
+            }
+            
+            @Override
+            public boolean postVisitDirectory(File directory, int depth) {
+                if (!stack.isEmpty() && stack.get(stack.size() - 1).dir.equals(directory)) {
+                    stack.remove(stack.size() - 1);
+                }
+                return withinBudget[0];
+            }
+        });
+        
+        return withinBudget[0];
+    }
+    
+    private void removeSubtree(WatchedFolder folder, File dir) {
+        String path = dir.getAbsolutePath();
+        String prefix = path + File.separator;
+        
+        Iterator<Map.Entry<String, DirectoryWatch>> iterator = folder.watches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, DirectoryWatch> item = iterator.next();
+            if (item.getKey().equals(path) || item.getKey().startsWith(prefix)) {
+                DirectoryWatch watch = item.getValue();
+                for (long size : watch.fileSizes.values()) {
+                    folder.fileRemoved(size);
+                }
+                release(watch);
+                iterator.remove();
+            }
+        }
+    }
+    
+    private void fallBackToPolling(WatchedFolder folder) {
+        Log.w(TAG, "Watch budget exceeded, polling " + folder.root.getAbsolutePath() + " instead");
+        releaseWatches(folder);
+        folder.polled = true;
+        poll(folder);
+        scheduleRescans();
+    }
+    
+    private void poll(WatchedFolder folder) {
+        final long[] totals = new long[2];
+        TreeWalker.walk(folder.root, TreeWalker.UNLIMITED_DEPTH, new TreeWalker.Visitor() {
+            @Override
+            public boolean visitFile(File file, FileStat stat, int depth) {
+                totals[0]++;
+                totals[1] += stat.size;
+                return true;
+            }
+        });
+        
+        // Without events, additions and removals can only be seen as net changes
+        long fileDelta = totals[0] - folder.fileCount.get();
+        long byteDelta = totals[1] - folder.byteCount.get();
+        if (folder.scanned) {
+            folder.filesAdded.addAndGet(Math.max(0, fileDelta));
+            folder.filesRemoved.addAndGet(Math.max(0, -fileDelta));
+            folder.bytesAdded.addAndGet(Math.max(0, byteDelta));
+            folder.bytesRemoved.addAndGet(Math.max(0, -byteDelta));
+            folder.fileCount.set(totals[0]);
+            folder.byteCount.set(totals[1]);
+        } else {
+            folder.resetCounters(totals[0], totals[1]);
+        }
+    }
+    
+    private void checkThreshold(final WatchedFolder folder) {
+        if (folder.runPending || !folder.scanned || folder.byteCount.get() < folder.triggerBytes) {
+            return;
+        }
+        
+        long wait = folder.lastTriggerTime + MIN_TRIGGER_INTERVAL_MILLIS - System.currentTimeMillis();
+        if (wait > 0) {
+            if (!folder.checkScheduled) {
+                folder.checkScheduled = true;
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        folder.checkScheduled = false;
+                        if (folders.get(folder.root.getAbsolutePath()) == folder) {
+                            checkThreshold(folder);
+                        }
+                    }
+                }, wait, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        
+        ThresholdListener listener = thresholdListener;
+        if (listener == null) {
+            return;
+        }
+        
+        String path = folder.root.getAbsolutePath();
+        if (listener.onThresholdReached(path, folder.byteCount.get())) {
+            Log.d(TAG, path + " reached " + folder.byteCount.get() + " bytes, threshold "
+                + folder.sizeThreshold + "; running cleanup");
+            folder.runPending = true;
+            folder.lastTriggerTime = System.currentTimeMillis();
+        }
+        // Otherwise another run is busy; its rescan or the next event checks again
+    }
+    
+    private void rearmThreshold(WatchedFolder folder) {
+        if (folder.sizeThreshold <= 0) {
+            folder.triggerBytes = Long.MAX_VALUE;
+            return;
+        }
+        
+        long bytes = folder.byteCount.get();
+        if (bytes < folder.sizeThreshold) {
+            folder.triggerBytes = folder.sizeThreshold;
+        } else {
+            // Whatever the run kept (e.g. files its expiry policy spares) is
+            // not worth another run until the folder grows again
+            folder.triggerBytes = bytes + folder.sizeThreshold / REGROWTH_DIVISOR;
+            Log.d(TAG, folder.root.getAbsolutePath() + " still above threshold after cleanup, next run at "
+                + folder.triggerBytes + " bytes");
+        }
+    }
+    
+    private void releaseWatches(WatchedFolder folder) {
+        for (DirectoryWatch watch : folder.watches.values()) {
+            release(watch);
+        }
+        folder.watches.clear();
+    }
+    
+    private void release(DirectoryWatch watch) {
+        watch.active = false;
+        watch.stopWatching();
+        watchCount--;
+        trackedFileCount -= watch.fileSizes.size();
+    }
+}
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.folderdeleter;
 import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
@@ -17,6 +19,8 @@ import android.view.animation.AnimationSet;
 import android.view.animation.ScaleAnimation;
 import android.view.animation.DecelerateInterpolator;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.TimePicker;
 import android.widget.EditText;
@@ -28,19 +32,36 @@ import android.widget.LinearLayout;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Collections;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 
 public class MainActivity extends Activity {
     
     private static final int PERMISSION_REQUEST_CODE = 100;
     private static final int FOLDER_PICKER_REQUEST = 200;
+    private static final long MEGABYTE = 1024 * 1024L;
+    
+    private static final ExecutorService sizeExecutor = Executors.newSingleThreadExecutor();
     
     private Button btnSelectFolder;
     private Button btnStartService;
     private Button btnStopService;
     private Button btnSettings;
+    private Button btnFolderOptions;
+    private Button btnRunOptions;
+    private Button btnPreview;
     private TextView txtSelectedFolders;
     private TextView txtServiceStatus;
+    private TextView txtLastRun;
     private EditText editInterval;
     private TimePicker timePicker;
     
@@ -53,6 +74,7 @@ public class MainActivity extends Activity {
     
     private SettingsManager settingsManager;
     private PermissionManager permissionManager;
+    private FolderManager folderManager;
     private ArrayList<String> selectedFolders;
     private ArrayAdapter<String> foldersAdapter;
     
@@ -72,8 +94,12 @@ public class MainActivity extends Activity {
         btnStartService = findViewById(R.id.btnStartService);
         btnStopService = findViewById(R.id.btnStopService);
         btnSettings = findViewById(R.id.btnSettings);
+        btnFolderOptions = findViewById(R.id.btnFolderOptions);
+        btnRunOptions = findViewById(R.id.btnRunOptions);
+        btnPreview = findViewById(R.id.btnPreview);
         txtSelectedFolders = findViewById(R.id.txtSelectedFolders);
         txtServiceStatus = findViewById(R.id.txtServiceStatus);
+        txtLastRun = findViewById(R.id.txtLastRun);
         editInterval = findViewById(R.id.editInterval);
         timePicker = findViewById(R.id.timePicker);
         
@@ -86,6 +112,7 @@ public class MainActivity extends Activity {
         
         settingsManager = new SettingsManager(this);
         permissionManager = new PermissionManager(this);
+        folderManager = new FolderManager(this);
         selectedFolders = new ArrayList<>();
         
         setupClickListeners();
@@ -127,6 +154,43 @@ public class MainActivity extends Activity {
             }
         });
         
+        btnFolderOptions.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                chooseFolderForOptions();
+            }
+        });
+        
+        btnRunOptions.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showRunOptions();
+            }
+        });
+        
+        btnPreview.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                previewDeletion();
+            }
+        });
+        
+        txtLastRun.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showLastRunReport();
+            }
+        });
+        
+        // Long click on the status to see what the app has cost in wakeups
+        txtServiceStatus.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                showWakeupStats();
+                return true;
+            }
+        });
+        
         // Long click on settings button to show permission status (debug feature)
         btnSettings.setOnLongClickListener(new View.OnLongClickListener() {
             @Override
@@ -167,27 +231,61 @@ public class MainActivity extends Activity {
             return;
         }
         
+        // Nothing runs until the alarm fires; each run starts its own
+        // short-lived service
+        settingsManager.setServiceEnabled(true);
         saveCurrentSettings();
+        startFolderWatcher();
         
-        Intent serviceIntent = new Intent(this, FolderDeletionService.class);
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
-        } else {
-            startService(serviceIntent);
-        }
-        
-        Toast.makeText(this, "Folder deletion service started", Toast.LENGTH_SHORT).show();
+        Toast.makeText(this, "Folder deletion scheduled", Toast.LENGTH_SHORT).show();
         updateUI();
     }
     
     private void stopDeletionService() {
-        Intent serviceIntent = new Intent(this, FolderDeletionService.class);
-        stopService(serviceIntent);
+        settingsManager.setServiceEnabled(false);
+        new AlarmScheduler(this).cancelAllAlarms();
+        ThresholdJobService.update(this);
+        stopFolderWatcher();
         
-        Toast.makeText(this, "Folder deletion service stopped", Toast.LENGTH_SHORT).show();
+        Toast.makeText(this, "Scheduled folder deletion stopped", Toast.LENGTH_SHORT).show();
         updateUI();
     }
     
+    // While the app is visible, size thresholds are checked on every change
+    // instead of by the periodic job
+    private void startFolderWatcher() {
+        FolderWatcher watcher = FolderWatcher.getInstance(this);
+        watcher.setThresholdListener(new FolderWatcher.ThresholdListener() {
+            @Override
+            public boolean onThresholdReached(final String folderPath, long byteCount) {
+                final Context context = getApplicationContext();
+                List<String> folders = Collections.singletonList(folderPath);
+                if (!DeferredRunJobService.checkOrDefer(context, folders, false)) {
+                    // The deferred run stands in for the cleanup; the threshold
+                    // re-arms above the current size meanwhile
+                    FolderWatcher.getInstance(context).thresholdRunFinished(folderPath);
+                    return true;
+                }
+                return DeletionRunner.runAsync(context, folders, DeferredRunJobService.newPauseCheck(context),
+                    new DeletionRunner.Callback() {
+                        @Override
+                        public void onDeletionComplete(DeletionReport report) {
+                            FolderWatcher.getInstance(context).thresholdRunFinished(folderPath);
+                            DeferredRunJobService.deferRemaining(context, report);
+                            NotificationHelper.showReportNotification(context, report);
+                        }
+                    });
+            }
+        });
+        watcher.refresh();
+    }
+    
+    private void stopFolderWatcher() {
+        FolderWatcher watcher = FolderWatcher.getInstance(this);
+        watcher.setThresholdListener(null);
+        watcher.stop();
+    }
+    
     private void saveCurrentSettings() {
         // Save interval
         String intervalText = editInterval.getText().toString();
@@ -208,6 +306,11 @@ public class MainActivity extends Activity {
         
         // Save selected folders
         settingsManager.setSelectedFolders(selectedFolders);
+        if (settingsManager.isServiceEnabled()) {
+            new AlarmScheduler(this).scheduleNextDeletion();
+            FolderWatcher.getInstance(this).refresh();
+        }
+        ThresholdJobService.update(this);
     }
     
     private void loadSettings() {
@@ -235,22 +338,53 @@ public class MainActivity extends Activity {
         if (selectedFolders.isEmpty()) {
             txtSelectedFolders.setText("No folders selected");
         } else {
+            // Sizes come from the last measurement; refreshFolderSizes updates them
             StringBuilder sb = new StringBuilder();
             for (String folder : selectedFolders) {
-                sb.append(folder).append("\n");
+                sb.append(folder);
+                long size = folderManager.getLastKnownFolderSize(folder);
+                long threshold = settingsManager.getSizeThreshold(folder);
+                if (size >= 0 && threshold > 0) {
+                    sb.append(" (").append(DeletionReport.formatBytes(size))
+                        .append(" of ").append(DeletionReport.formatBytes(threshold)).append(")");
+                } else if (size >= 0) {
+                    sb.append(" (").append(DeletionReport.formatBytes(size)).append(")");
+                } else if (threshold > 0) {
+                    sb.append(" (limit ").append(DeletionReport.formatBytes(threshold)).append(")");
+                }
+                sb.append("\n");
             }
             txtSelectedFolders.setText(sb.toString());
         }
         
         // Update service status
-        if (FolderDeletionService.isRunning()) {
-            txtServiceStatus.setText("Service Status: RUNNING");
+        if (DeletionRunner.isRunInProgress()) {
+            txtServiceStatus.setText("Service Status: DELETING");
+            txtServiceStatus.setTextColor(getResources().getColor(android.R.color.holo_green_dark));
+        } else if (settingsManager.isServiceEnabled()) {
+            txtServiceStatus.setText("Service Status: SCHEDULED\nNext run: "
+                + new AlarmScheduler(this).getNextDeletionTimeString());
             txtServiceStatus.setTextColor(getResources().getColor(android.R.color.holo_green_dark));
         } else {
             txtServiceStatus.setText("Service Status: STOPPED");
             txtServiceStatus.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
         }
         
+        // Update last run summary
+        DeletionReport lastReport = settingsManager.getLastDeletionReport();
+        DeletionReport lastPreview = settingsManager.getLastPreviewReport();
+        if (lastReport == null && lastPreview != null) {
+            txtLastRun.setText("Last run: never\nPreview: " + lastPreview.getSummary());
+        } else if (lastReport == null) {
+            txtLastRun.setText("Last run: never");
+        } else {
+            long lastRunTime = settingsManager.getLastDeletionTime();
+            String when = lastRunTime > 0
+                ? new SimpleDateFormat("MMM dd 'at' HH:mm", Locale.getDefault()).format(new Date(lastRunTime)) + " - "
+                : "";
+            txtLastRun.setText("Last run: " + when + lastReport.getSummary());
+        }
+        
         // Update button states based on permissions
         boolean hasAllPermissions = permissionManager.hasAllPermissions();
         if (!hasAllPermissions) {
@@ -266,6 +400,30 @@ public class MainActivity extends Activity {
         Log.d("MainActivity", "Notification permission: " + permissionManager.hasNotificationPermission());
     }
     
+    private void refreshFolderSizes() {
+        final List<String> folders = new ArrayList<>(selectedFolders);
+        if (folders.isEmpty()) {
+            return;
+        }
+        
+        sizeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String folder : folders) {
+                    folderManager.getFolderSize(folder);
+                }
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isFinishing()) {
+                            updateUI();
+                        }
+                    }
+                });
+            }
+        });
+    }
+    
     private void showSettingsDialog() {
         new AlertDialog.Builder(this)
             .setTitle("Settings Saved")
@@ -277,6 +435,239 @@ public class MainActivity extends Activity {
             .show();
     }
     
+    private void chooseFolderForOptions() {
+        saveCurrentSettings();
+        if (selectedFolders.isEmpty()) {
+            Toast.makeText(this, "Please select at least one folder", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        final String[] folders = selectedFolders.toArray(new String[0]);
+        new AlertDialog.Builder(this)
+            .setTitle("Folder Options")
+            .setItems(folders, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    showFolderOptions(folders[which]);
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+    
+    // Size threshold, schedule, expiry policy and rules of one folder
+    private void showFolderOptions(final String folderPath) {
+        View view = getLayoutInflater().inflate(R.layout.dialog_folder_options, null);
+        final EditText editSizeThreshold = view.findViewById(R.id.editSizeThreshold);
+        final EditText editSchedule = view.findViewById(R.id.editSchedule);
+        final EditText editMaxAge = view.findViewById(R.id.editMaxAge);
+        final EditText editMinSize = view.findViewById(R.id.editMinSize);
+        final EditText editExtensions = view.findViewById(R.id.editExtensions);
+        final EditText editRules = view.findViewById(R.id.editRules);
+        
+        editSizeThreshold.setText(String.valueOf(settingsManager.getSizeThreshold(folderPath) / MEGABYTE));
+        FolderSchedule schedule = settingsManager.getFolderSchedule(folderPath);
+        editSchedule.setText(schedule != null ? schedule.serialize() : "");
+        ExpiryPolicy policy = settingsManager.getExpiryPolicy(folderPath);
+        editMaxAge.setText(String.valueOf(policy != null ? policy.getMaxAgeDays() : 0));
+        editMinSize.setText(String.valueOf(policy != null ? policy.getMinSizeMb() : 0));
+        StringBuilder extensions = new StringBuilder();
+        if (policy != null) {
+            for (String extension : policy.getExtensions()) {
+                if (extensions.length() > 0) {
+                    extensions.append(',');
+                }
+                extensions.append(extension);
+            }
+        }
+        editExtensions.setText(extensions);
+        DeletionRules rules = settingsManager.getDeletionRules(folderPath);
+        editRules.setText(rules != null ? rules.serialize() : "");
+        
+        new AlertDialog.Builder(this)
+            .setTitle(new File(folderPath).getName())
+            .setView(view)
+            .setPositiveButton("Save", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    settingsManager.setSizeThreshold(folderPath, readNumber(editSizeThreshold) * MEGABYTE);
+                    
+                    String scheduleText = editSchedule.getText().toString().trim();
+                    FolderSchedule schedule = scheduleText.isEmpty() ? null : FolderSchedule.parse(scheduleText);
+                    if (scheduleText.isEmpty() || schedule != null) {
+                        settingsManager.setFolderSchedule(folderPath, schedule);
+                    } else {
+                        Toast.makeText(MainActivity.this, "Invalid schedule, keeping the previous one",
+                            Toast.LENGTH_LONG).show();
+                    }
+                    
+                    Set<String> extensions = new HashSet<>(
+                        Arrays.asList(editExtensions.getText().toString().split(",")));
+                    settingsManager.setExpiryPolicy(folderPath, new ExpiryPolicy(
+                        (int) Math.min(Integer.MAX_VALUE, readNumber(editMaxAge)), readNumber(editMinSize), extensions));
+                    settingsManager.setDeletionRules(folderPath,
+                        DeletionRules.parse(editRules.getText().toString()));
+                    applyOptions();
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+    
+    // Options that apply to every run
+    private void showRunOptions() {
+        View view = getLayoutInflater().inflate(R.layout.dialog_run_options, null);
+        final CheckBox checkStaged = view.findViewById(R.id.checkStaged);
+        final EditText editTimeBudget = view.findViewById(R.id.editTimeBudget);
+        final EditText editParallelism = view.findViewById(R.id.editParallelism);
+        final RadioGroup groupCatchUp = view.findViewById(R.id.groupCatchUp);
+        final EditText editMaxLateness = view.findViewById(R.id.editMaxLateness);
+        final CheckBox checkCharging = view.findViewById(R.id.checkCharging);
+        final CheckBox checkIdle = view.findViewById(R.id.checkIdle);
+        final CheckBox checkScreenOff = view.findViewById(R.id.checkScreenOff);
+        final EditText editMinBattery = view.findViewById(R.id.editMinBattery);
+        final EditText editMaxDeferral = view.findViewById(R.id.editMaxDeferral);
+        
+        checkStaged.setChecked(settingsManager.isStagedDeletionEnabled());
+        editTimeBudget.setText(String.valueOf(settingsManager.getDeletionTimeBudget()));
+        editParallelism.setText(String.valueOf(settingsManager.getDeletionParallelism()));
+        int catchUpPolicy = settingsManager.getCatchUpPolicy();
+        groupCatchUp.check(catchUpPolicy == DeletionSchedule.CATCH_UP_SKIP ? R.id.radioCatchUpSkip
+            : catchUpPolicy == DeletionSchedule.CATCH_UP_WHEN_IDLE ? R.id.radioCatchUpIdle : R.id.radioCatchUpNow);
+        editMaxLateness.setText(String.valueOf(settingsManager.getCatchUpMaxLatenessHours()));
+        RunConstraints constraints = settingsManager.getRunConstraints();
+        checkCharging.setChecked(constraints != null && constraints.isRequireCharging());
+        checkIdle.setChecked(constraints != null && constraints.isRequireIdle());
+        checkScreenOff.setChecked(constraints != null && constraints.isRequireScreenOff());
+        editMinBattery.setText(String.valueOf(constraints != null ? constraints.getMinBatteryPercent() : 0));
+        editMaxDeferral.setText(String.valueOf(constraints != null
+            ? constraints.getMaxDeferralHours() : RunConstraints.DEFAULT_MAX_DEFERRAL_HOURS));
+        
+        new AlertDialog.Builder(this)
+            .setTitle("Run Options")
+            .setView(view)
+            .setPositiveButton("Save", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    settingsManager.setStagedDeletionEnabled(checkStaged.isChecked());
+                    settingsManager.setDeletionTimeBudget((int) Math.min(Integer.MAX_VALUE, readNumber(editTimeBudget)));
+                    // 0 or empty falls back to the sequential walk
+                    settingsManager.setDeletionParallelism((int) Math.max(1, Math.min(64, readNumber(editParallelism))));
+                    int checked = groupCatchUp.getCheckedRadioButtonId();
+                    settingsManager.setCatchUpPolicy(checked == R.id.radioCatchUpSkip ? DeletionSchedule.CATCH_UP_SKIP
+                        : checked == R.id.radioCatchUpIdle ? DeletionSchedule.CATCH_UP_WHEN_IDLE
+                        : DeletionSchedule.CATCH_UP_COALESCE);
+                    settingsManager.setCatchUpMaxLatenessHours((int) Math.min(Integer.MAX_VALUE, readNumber(editMaxLateness)));
+                    settingsManager.setRunConstraints(new RunConstraints(checkCharging.isChecked(), checkIdle.isChecked(),
+                        checkScreenOff.isChecked(), (int) Math.min(100, readNumber(editMinBattery)),
+                        (int) Math.min(Integer.MAX_VALUE, readNumber(editMaxDeferral))));
+                    applyOptions();
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+    
+    // Empty or out-of-range input counts as 0
+    private static long readNumber(EditText edit) {
+        try {
+            return Math.max(0, Long.parseLong(edit.getText().toString().trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    // Schedules, thresholds and catch-up all feed the next alarm and job
+    private void applyOptions() {
+        if (settingsManager.isServiceEnabled()) {
+            new AlarmScheduler(this).scheduleNextDeletion();
+            FolderWatcher.getInstance(this).refresh();
+        }
+        ThresholdJobService.update(this);
+        updateUI();
+    }
+    
+    private void previewDeletion() {
+        saveCurrentSettings();
+        if (selectedFolders.isEmpty()) {
+            Toast.makeText(this, "Please select at least one folder", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        btnPreview.setEnabled(false);
+        btnPreview.setText("PREVIEWING...");
+        sizeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DeletionReport preview = folderManager.previewDeletion();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        btnPreview.setEnabled(true);
+                        btnPreview.setText("PREVIEW DELETION");
+                        if (isFinishing()) {
+                            return;
+                        }
+                        updateUI();
+                        showReport(preview);
+                    }
+                });
+            }
+        });
+    }
+    
+    private void showLastRunReport() {
+        DeletionReport lastReport = settingsManager.getLastDeletionReport();
+        if (lastReport == null) {
+            lastReport = settingsManager.getLastPreviewReport();
+        }
+        if (lastReport == null) {
+            Toast.makeText(this, "No deletion run yet", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        showReport(lastReport);
+    }
+    
+    private void showReport(DeletionReport report) {
+        String title;
+        if (report.isDryRun()) {
+            title = report.isSuccess() ? "Deletion Preview" : "Deletion Preview Had Failures";
+        } else {
+            title = report.isSuccess() ? "Last Run Completed" : "Last Run Had Failures";
+        }
+        
+        new AlertDialog.Builder(this)
+            .setTitle(title)
+            .setMessage(report.getDetails())
+            .setPositiveButton("OK", null)
+            .show();
+    }
+    
+    private void showWakeupStats() {
+        final String stats = WakeupStats.getInstance(this).dump();
+        new AlertDialog.Builder(this)
+            .setTitle("Wakeups per Day")
+            .setMessage(stats)
+            .setPositiveButton("OK", null)
+            .setNeutralButton("Share", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    Intent intent = new Intent(Intent.ACTION_SEND);
+                    intent.setType("text/plain");
+                    intent.putExtra(Intent.EXTRA_SUBJECT, "Folder Deleter wakeups");
+                    intent.putExtra(Intent.EXTRA_TEXT, stats);
+                    startActivity(Intent.createChooser(intent, "Share wakeup stats"));
+                }
+            })
+            .setNegativeButton("Reset", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    WakeupStats.getInstance(MainActivity.this).clear();
+                }
+            })
+            .show();
+    }
+    
     private void initializeFooterAnimation() {
         // Post animation to run after layout is complete
         footerBranding.post(new Runnable() {
@@ -339,6 +730,7 @@ public class MainActivity extends Activity {
                 if (!selectedFolders.contains(selectedFolder)) {
                     selectedFolders.add(selectedFolder);
                     updateUI();
+                    refreshFolderSizes();
                 }
             }
         }
@@ -359,12 +751,29 @@ public class MainActivity extends Activity {
         }
     }
     
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (settingsManager.isServiceEnabled()) {
+            startFolderWatcher();
+        }
+    }
+    
+    @Override
+    protected void onStop() {
+        // In the background the periodic job checks thresholds instead, so
+        // the watches and the rescan are released until the next onStart
+        stopFolderWatcher();
+        super.onStop();
+    }
+    
     @Override
     protected void onResume() {
         super.onResume();
         // Check permissions again when returning to the app
         Log.d("MainActivity", "onResume - checking permissions");
         updateUI();
+        refreshFolderSizes();
         
         // If user granted permissions while we were paused, inform them
         if (permissionManager.hasAllPermissions()) {
@@ -15,7 +15,16 @@ public class NotificationHelper {
     private static final int NOTIFICATION_ID_SUCCESS = 2001;
     private static final int NOTIFICATION_ID_FAILURE = 2002;
     
-    public static void showDeletionSuccessNotification(Context context) {
+    // Success or failure notification, whichever the report calls for
+    public static void showReportNotification(Context context, DeletionReport report) {
+        if (report != null && report.isSuccess()) {
+            showDeletionSuccessNotification(context, report);
+        } else {
+            showDeletionFailureNotification(context, report);
+        }
+    }
+    
+    public static void showDeletionSuccessNotification(Context context, DeletionReport report) {
         createNotificationChannels(context);
         
         Intent intent = new Intent(context, MainActivity.class);
@@ -26,16 +35,20 @@ public class NotificationHelper {
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID_SUCCESS)
             .setSmallIcon(R.drawable.ic_check)
             .setContentTitle("Folder Deletion Completed")
-            .setContentText("Selected folders have been successfully deleted")
+            .setContentText(report != null ? report.getSummary() : "Selected folders have been successfully deleted")
             .setPriority(NotificationCompat.PRIORITY_DEFAULT)
             .setContentIntent(pendingIntent)
             .setAutoCancel(true);
         
+        if (report != null) {
+            builder.setStyle(new NotificationCompat.BigTextStyle().bigText(report.getDetails()));
+        }
+        
         NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         manager.notify(NOTIFICATION_ID_SUCCESS, builder.build());
     }
     
-    public static void showDeletionFailureNotification(Context context) {
+    public static void showDeletionFailureNotification(Context context, DeletionReport report) {
         createNotificationChannels(context);
         
         Intent intent = new Intent(context, MainActivity.class);
@@ -46,11 +59,15 @@ public class NotificationHelper {
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID_FAILURE)
             .setSmallIcon(R.drawable.ic_error)
             .setContentTitle("Folder Deletion Failed")
-            .setContentText("Some folders could not be deleted. Tap to check details.")
+            .setContentText(report != null ? report.getSummary() : "Some folders could not be deleted. Tap to check details.")
             .setPriority(NotificationCompat.PRIORITY_HIGH)
             .setContentIntent(pendingIntent)
             .setAutoCancel(true);
         
+        if (report != null) {
+            builder.setStyle(new NotificationCompat.BigTextStyle().bigText(report.getDetails()));
+        }
+        
         NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         manager.notify(NOTIFICATION_ID_FAILURE, builder.build());
     }
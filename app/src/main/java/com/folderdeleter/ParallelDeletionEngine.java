@@ -0,0 +1,198 @@
+package com.folderdeleter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ParallelDeletionEngine {
+    
+    private final ForkJoinPool pool;
+    
+    public ParallelDeletionEngine(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+    
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+    
+    public boolean delete(File root, DeletionRun run) {
+        return invoke(root, run, null, null);
+    }
+    
+    // Deletes only the files matching the policy (if any) and allowed by the
+    // rules (if any), and prunes directories this pass emptied; the root
+    // folder itself is kept. Subtrees the rules exclude are not entered.
+    public boolean expire(File root, ExpiryPolicy policy, DeletionRules rules, DeletionRun run) {
+        DeletionRules.State ruleState = rules != null ? rules.getRootState() : null;
+        return invoke(root, run, new Filter(policy, rules), ruleState);
+    }
+    
+    // Tasks are only created for directories, whose children come with the
+    // lstat that classified them; only the root is stat'ed here. As in the
+    // sequential walk, the first failure ends the pass: tasks stop listing
+    // and forking, pending ones return without doing anything, and no
+    // directory above the failure is removed.
+    private boolean invoke(File root, DeletionRun run, Filter filter, DeletionRules.State ruleState) {
+        FileStat rootStat = FileStat.of(root);
+        DeleteTask task = new DeleteTask(root, 0, rootStat.device, run, filter, ruleState, new AtomicBoolean());
+        if (!rootStat.isDirectory()) {
+            return task.deleteFile(root, rootStat);
+        }
+        return pool.invoke(task);
+    }
+    
+    public void shutdown() {
+        pool.shutdown();
+    }
+    
+    // What an expiry pass keeps; shared by all tasks of one pass
+    private static class Filter {
+        
+        final ExpiryPolicy policy;
+        final DeletionRules rules;
+        
+        Filter(ExpiryPolicy policy, DeletionRules rules) {
+            this.policy = policy;
+            this.rules = rules;
+        }
+    }
+    
+    // Deletes the files of one directory inline and forks a subtask per
+    // subdirectory; the directory itself is only removed once every child
+    // task has joined successfully.
+    private static class DeleteTask extends RecursiveTask<Boolean> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final File file;
+        private final int depth;
+        // Device of the walk root; directories on any other device are not entered
+        private final long device;
+        private final DeletionRun run;
+        private final Filter filter;
+        // Rule state of this directory, or of the parent directory for a file
+        private final DeletionRules.State ruleState;
+        // Shared by every task of one pass; set by the first failure
+        private final AtomicBoolean failed;
+        // Set when an expiry pass pruned this directory; read by the parent after join
+        private boolean pruned;
+        
+        DeleteTask(File file, int depth, long device, DeletionRun run, Filter filter,
+                DeletionRules.State ruleState, AtomicBoolean failed) {
+            this.file = file;
+            this.depth = depth;
+            this.device = device;
+            this.run = run;
+            this.filter = filter;
+            this.ruleState = ruleState;
+            this.failed = failed;
+        }
+        
+        @Override
+        protected Boolean compute() {
+            if (failed.get()) {
+                return false;
+            }
+            // Already processed by an interrupted run and left in place
+            if (run.isSubtreeCompleted(file)) {
+                return fail();
+            }
+            
+            List<DeleteTask> subtasks = new ArrayList<>();
+            // Whether anything was deleted directly in this directory
+            boolean changed = false;
+            TreeWalker.DirectoryCursor cursor = run.openDirectory(file, 0);
+            if (cursor != null) {
+                try {
+                    File child;
+                    while (!failed.get() && (child = cursor.next()) != null) {
+                        // Classified with lstat, as in TreeWalker: symlinks and
+                        // mount points are never descended into
+                        FileStat stat = FileStat.lstat(child);
+                        if (stat.isSymbolicLink()) {
+                            run.handleBoundary(child, TreeWalker.BOUNDARY_SYMLINK, filter == null);
+                        } else if (stat.isDirectory() && stat.isOnOtherDevice(device)) {
+                            run.handleBoundary(child, TreeWalker.BOUNDARY_MOUNT_POINT, false);
+                        } else if (stat.isDirectory()) {
+                            if (run.isProtectedDirectory(child)) {
+                                // Left in place, so removing this directory simply fails
+                                continue;
+                            }
+                            DeletionRules.State childState = filter != null && filter.rules != null
+                                ? filter.rules.enterDirectory(ruleState, child.getName())
+                                : null;
+                            if (childState != null && childState.isExcluded()) {
+                                // Excluded subtrees are kept without being listed
+                                continue;
+                            }
+                            DeleteTask subtask = new DeleteTask(child, depth + 1, device, run, filter, childState,
+                                failed);
+                            subtask.fork();
+                            subtasks.add(subtask);
+                        } else if (isKept(child, stat)) {
+                            // Left in place by the filter
+                            continue;
+                        } else if (run.deleteFile(child, stat)) {
+                            changed = true;
+                        } else {
+                            fail();
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            
+            // Subtasks forked before a failure see the flag and return at once
+            for (DeleteTask subtask : subtasks) {
+                subtask.join();
+                changed |= subtask.pruned;
+            }
+            if (failed.get()) {
+                return false;
+            }
+            
+            if (filter != null) {
+                // Directories still holding kept files simply fail to rmdir.
+                // One nothing was deleted from was empty before and is kept.
+                if (depth > 0) {
+                    if (changed && run.deleteDirectoryIfEmpty(file)) {
+                        pruned = true;
+                    } else {
+                        run.recordSubtree(file);
+                    }
+                }
+                return true;
+            }
+            
+            if (!run.deleteDirectory(file)) {
+                run.recordSubtree(file);
+                return fail();
+            }
+            return true;
+        }
+        
+        private boolean fail() {
+            failed.set(true);
+            return false;
+        }
+        
+        private boolean deleteFile(File child, FileStat stat) {
+            return isKept(child, stat) || run.deleteFile(child, stat);
+        }
+        
+        private boolean isKept(File child, FileStat stat) {
+            if (filter == null) {
+                return false;
+            }
+            if (filter.rules != null && !filter.rules.isFileDeleted(ruleState, child.getName())) {
+                return true;
+            }
+            return filter.policy != null && !filter.policy.matches(child, stat, run.getStartTime());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,218 @@
+package com.folderdeleter;
+
+import android.os.Environment;
+import android.os.SystemClock;
+import android.util.LruCache;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// System trees the app must never delete from, as a trie over whole path
+// segments: "/system" protects "/system/app" but not "/systemfoo". Paths
+// are matched both as given (after resolving "." and "..") and in canonical
+// form, so "/sdcard/../system" and symlinks into a protected tree are
+// caught when a folder is selected. Canonical paths are cached briefly, as
+// resolving one costs an lstat per path segment.
+public class ProtectedPaths {
+    
+    // A trailing '*' protects every sibling whose name starts with the prefix
+    private static final String[] PROTECTED_ROOTS = {
+        "/system",
+        "/data/system",
+        "/data/data/com.android*",
+        "/proc",
+        "/dev",
+        "/sys"
+    };
+    
+    private static final int CANONICAL_CACHE_SIZE = 512;
+    
+    // A path can be swapped for a symlink at any time, so resolutions are
+    // only trusted for a short while
+    private static final long CANONICAL_CACHE_MILLIS = 10000;
+    
+    private static final int MATCH_NONE = 0;
+    private static final int MATCH_INSIDE = 1;
+    private static final int MATCH_ANCESTOR = 2;
+    
+    private static ProtectedPaths instance;
+    
+    private final Node root = new Node();
+    private final LruCache<String, CanonicalPath> canonicalCache = new LruCache<>(CANONICAL_CACHE_SIZE);
+    
+    public static synchronized ProtectedPaths getInstance() {
+        if (instance == null) {
+            instance = new ProtectedPaths();
+        }
+        return instance;
+    }
+    
+    private ProtectedPaths() {
+        List<String> roots = new ArrayList<>();
+        for (String path : PROTECTED_ROOTS) {
+            roots.add(path);
+        }
+        roots.add(Environment.getRootDirectory().getAbsolutePath());
+        
+        for (String path : roots) {
+            add(path);
+            // /data/data is a symlink to /data/user/0 on multi-user devices
+            int lastSlash = path.lastIndexOf('/');
+            String parent = path.substring(0, Math.max(1, lastSlash));
+            String canonicalParent = canonicalize(parent);
+            if (!canonicalParent.equals(parent)) {
+                add(canonicalParent + path.substring(lastSlash));
+            }
+        }
+    }
+    
+    private static class Node {
+        
+        final Map<String, Node> children = new HashMap<>();
+        final List<String> namePrefixes = new ArrayList<>();
+        boolean isProtected;
+    }
+    
+    private static class CanonicalPath {
+        
+        final String path;
+        final long resolvedAt;
+        
+        CanonicalPath(String path, long resolvedAt) {
+            this.path = path;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+    
+    // True if the path lies inside a protected tree, or contains one so that
+    // deleting it would reach into it
+    public boolean isCritical(String path) {
+        String normalized = needsNormalizing(path) ? normalize(path) : path;
+        return match(normalized) != MATCH_NONE || match(getCanonicalPath(normalized)) != MATCH_NONE;
+    }
+    
+    // Checked for every directory a deletion walk is about to enter. Walks
+    // never follow symlinks or cross devices, so below an accepted folder the
+    // path as walked is already canonical and no syscall is needed.
+    public boolean isProtectedDirectory(File dir) {
+        return match(dir.getAbsolutePath()) == MATCH_INSIDE;
+    }
+    
+    private int match(String path) {
+        Node node = root;
+        int start = 0;
+        int length = path.length();
+        
+        while (start < length) {
+            if (path.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            String segment = path.substring(start, end);
+            
+            for (String prefix : node.namePrefixes) {
+                if (segment.startsWith(prefix)) {
+                    return MATCH_INSIDE;
+                }
+            }
+            Node child = node.children.get(segment);
+            if (child == null) {
+                return MATCH_NONE;
+            }
+            if (child.isProtected) {
+                return MATCH_INSIDE;
+            }
+            node = child;
+            start = end + 1;
+        }
+        
+        // Ran out of segments on the way down to a protected root
+        return MATCH_ANCESTOR;
+    }
+    
+    private void add(String path) {
+        Node node = root;
+        String[] segments = trimSlashes(path).split("/+");
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (i == segments.length - 1 && segment.endsWith("*")) {
+                node.namePrefixes.add(segment.substring(0, segment.length() - 1));
+                return;
+            }
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        node.isProtected = true;
+    }
+    
+    private String getCanonicalPath(String path) {
+        long now = SystemClock.uptimeMillis();
+        CanonicalPath cached = canonicalCache.get(path);
+        if (cached != null && now - cached.resolvedAt < CANONICAL_CACHE_MILLIS) {
+            return cached.path;
+        }
+        
+        String canonical = canonicalize(path);
+        canonicalCache.put(path, new CanonicalPath(canonical, now));
+        return canonical;
+    }
+    
+    private static String canonicalize(String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException | SecurityException e) {
+            return normalize(path);
+        }
+    }
+    
+    private static boolean needsNormalizing(String path) {
+        return !path.startsWith("/") || path.contains("//") || path.contains("/.")
+            || (path.length() > 1 && path.endsWith("/"));
+    }
+    
+    // Resolves "." and ".." without touching the filesystem
+    static String normalize(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : trimSlashes(path).split("/+")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+            } else {
+                segments.add(segment);
+            }
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        for (String segment : segments) {
+            sb.append('/').append(segment);
+        }
+        return sb.length() > 0 ? sb.toString() : "/";
+    }
+    
+    private static String trimSlashes(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+// Device conditions a scheduled run waits for. A run that is due while they
+// do not hold is deferred (DeferredRunJobService) for at most
+// maxDeferralHours, after which it runs anyway. Idle cannot be observed
+// directly, so it is left to JobScheduler's idle constraint; once granted,
+// it is taken to hold until the job is stopped.
+public class RunConstraints {
+    
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    
+    // Offered in the run options while no conditions are set
+    public static final int DEFAULT_MAX_DEFERRAL_HOURS = 12;
+    
+    private final boolean requireCharging;
+    private final boolean requireIdle;
+    private final boolean requireScreenOff;
+    private final int minBatteryPercent;
+    private final int maxDeferralHours;
+    
+    public RunConstraints(boolean requireCharging, boolean requireIdle, boolean requireScreenOff,
+            int minBatteryPercent, int maxDeferralHours) {
+        this.requireCharging = requireCharging;
+        this.requireIdle = requireIdle;
+        this.requireScreenOff = requireScreenOff;
+        this.minBatteryPercent = Math.max(0, Math.min(100, minBatteryPercent));
+        this.maxDeferralHours = Math.max(1, maxDeferralHours);
+    }
+    
+    public boolean isRequireCharging() {
+        return requireCharging;
+    }
+    
+    public boolean isRequireIdle() {
+        return requireIdle;
+    }
+    
+    public boolean isRequireScreenOff() {
+        return requireScreenOff;
+    }
+    
+    public int getMinBatteryPercent() {
+        return minBatteryPercent;
+    }
+    
+    public int getMaxDeferralHours() {
+        return maxDeferralHours;
+    }
+    
+    public long getMaxDeferralMillis() {
+        return maxDeferralHours * HOUR_MILLIS;
+    }
+    
+    public boolean isEmpty() {
+        return !requireCharging && !requireIdle && !requireScreenOff && minBatteryPercent == 0;
+    }
+    
+    // Null if every condition holds, otherwise the first one that does not.
+    // `idle` says whether the device is known to be idle.
+    public String getUnmetReason(Context context, boolean idle) {
+        if (requireIdle && !idle) {
+            return "device not idle";
+        }
+        if (requireScreenOff) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && powerManager.isInteractive()) {
+                return "screen on";
+            }
+        }
+        if (!requireCharging && minBatteryPercent == 0) {
+            return null;
+        }
+        
+        // Sticky broadcast, so this is a lookup rather than a registration
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return null;
+        }
+        if (requireCharging && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) == 0) {
+            return "not charging";
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (minBatteryPercent > 0 && level >= 0 && scale > 0 && level * 100 / scale < minBatteryPercent) {
+            return "battery below " + minBatteryPercent + "%";
+        }
+        return null;
+    }
+    
+    // Serialized as "charging|idle|screenOff|minBattery|maxDeferralHours"
+    // with flags as 0 or 1, for SettingsManager
+    public String serialize() {
+        return (requireCharging ? 1 : 0) + "|" + (requireIdle ? 1 : 0) + "|" + (requireScreenOff ? 1 : 0)
+            + "|" + minBatteryPercent + "|" + maxDeferralHours;
+    }
+    
+    public static RunConstraints parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        
+        String[] parts = value.split("\\|", -1);
+        if (parts.length != 5) {
+            return null;
+        }
+        try {
+            return new RunConstraints(parts[0].equals("1"), parts[1].equals("1"), parts[2].equals("1"),
+                Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
\ No newline at end of file
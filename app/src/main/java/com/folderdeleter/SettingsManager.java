@@ -3,11 +3,13 @@ package com.folderdeleter;
 import android.content.Context;
 import android.content.SharedPreferences;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-public class SettingsManager {
+public class SettingsManager implements DeletionSchedule.Settings {
     
     private static final String PREFS_NAME = "FolderDeleterSettings";
     private static final String KEY_DELETION_INTERVAL = "deletion_interval";
@@ -16,6 +18,24 @@ public class SettingsManager {
     private static final String KEY_SELECTED_FOLDERS = "selected_folders";
     private static final String KEY_SERVICE_ENABLED = "service_enabled";
     private static final String KEY_LAST_DELETION = "last_deletion";
+    private static final String KEY_DELETION_PARALLELISM = "deletion_parallelism";
+    private static final String KEY_STAGED_DELETION = "staged_deletion";
+    private static final String KEY_TIME_BUDGET = "deletion_time_budget_seconds";
+    private static final String KEY_STAGING_DIRS = "staging_dirs";
+    private static final String KEY_JOURNAL_SYNC_INTERVAL = "journal_sync_interval";
+    private static final String KEY_EXPIRY_POLICY_PREFIX = "expiry_policy:";
+    private static final String KEY_THROTTLE_UNLINKS = "throttle_unlinks_per_second";
+    private static final String KEY_THROTTLE_DIRECTORY_OPS = "throttle_directory_ops_per_second";
+    private static final String KEY_LAST_REPORT = "last_deletion_report";
+    private static final String KEY_LAST_PREVIEW = "last_preview_report";
+    private static final String KEY_DELETION_RULES_PREFIX = "deletion_rules:";
+    private static final String KEY_SIZE_THRESHOLD_PREFIX = "size_threshold:";
+    private static final String KEY_SCHEDULE_PREFIX = "schedule:";
+    private static final String KEY_LAST_RUN_PREFIX = "last_run:";
+    private static final String KEY_CATCH_UP_POLICY = "catch_up_policy";
+    private static final String KEY_CATCH_UP_MAX_LATENESS = "catch_up_max_lateness_hours";
+    private static final String KEY_RUN_CONSTRAINTS = "run_constraints";
+    private static final String KEY_DEFERRED_RUNS = "deferred_runs";
     
     private SharedPreferences prefs;
     
@@ -46,11 +66,209 @@ public class SettingsManager {
         return prefs.getInt(KEY_DELETION_MINUTE, 0); // Default 0 minutes
     }
     
+    public void setDeletionParallelism(int threads) {
+        prefs.edit().putInt(KEY_DELETION_PARALLELISM, threads).apply();
+    }
+    
+    public int getDeletionParallelism() {
+        // Default to one worker per core; 1 keeps the sequential walk
+        return prefs.getInt(KEY_DELETION_PARALLELISM, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public void setJournalSyncInterval(int entries) {
+        prefs.edit().putInt(KEY_JOURNAL_SYNC_INTERVAL, entries).apply();
+    }
+    
+    public int getJournalSyncInterval() {
+        return prefs.getInt(KEY_JOURNAL_SYNC_INTERVAL, 64); // fsync every 64 journal entries
+    }
+    
+    public void setThrottleRates(int unlinksPerSecond, int directoryOpsPerSecond) {
+        prefs.edit()
+            .putInt(KEY_THROTTLE_UNLINKS, unlinksPerSecond)
+            .putInt(KEY_THROTTLE_DIRECTORY_OPS, directoryOpsPerSecond)
+            .apply();
+    }
+    
+    public int getThrottleUnlinksPerSecond() {
+        return prefs.getInt(KEY_THROTTLE_UNLINKS, 500); // 0 disables the limit
+    }
+    
+    public int getThrottleDirectoryOpsPerSecond() {
+        return prefs.getInt(KEY_THROTTLE_DIRECTORY_OPS, 100); // 0 disables the limit
+    }
+    
+    public void setDeletionTimeBudget(int seconds) {
+        prefs.edit().putInt(KEY_TIME_BUDGET, seconds).apply();
+    }
+    
+    public int getDeletionTimeBudget() {
+        return prefs.getInt(KEY_TIME_BUDGET, 0); // 0 runs to completion in directory order
+    }
+    
+    public void setStagedDeletionEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_STAGED_DELETION, enabled).apply();
+    }
+    
+    public boolean isStagedDeletionEnabled() {
+        return prefs.getBoolean(KEY_STAGED_DELETION, false);
+    }
+    
+    public void addStagingDir(String path) {
+        Set<String> dirs = new HashSet<>(getStagingDirs());
+        if (dirs.add(path)) {
+            // commit() rather than apply(): the entry must be on disk before the rename
+            prefs.edit().putStringSet(KEY_STAGING_DIRS, dirs).commit();
+        }
+    }
+    
+    public void removeStagingDir(String path) {
+        Set<String> dirs = new HashSet<>(getStagingDirs());
+        if (dirs.remove(path)) {
+            prefs.edit().putStringSet(KEY_STAGING_DIRS, dirs).apply();
+        }
+    }
+    
+    public Set<String> getStagingDirs() {
+        return prefs.getStringSet(KEY_STAGING_DIRS, new HashSet<String>());
+    }
+    
+    public void setExpiryPolicy(String folderPath, ExpiryPolicy policy) {
+        if (policy == null || policy.isEmpty()) {
+            prefs.edit().remove(KEY_EXPIRY_POLICY_PREFIX + folderPath).apply();
+        } else {
+            prefs.edit().putString(KEY_EXPIRY_POLICY_PREFIX + folderPath, policy.serialize()).apply();
+        }
+    }
+    
+    public ExpiryPolicy getExpiryPolicy(String folderPath) {
+        // No policy means the whole folder is deleted
+        return ExpiryPolicy.parse(prefs.getString(KEY_EXPIRY_POLICY_PREFIX + folderPath, null));
+    }
+    
+    public void setDeletionRules(String folderPath, DeletionRules rules) {
+        if (rules == null || rules.isEmpty()) {
+            prefs.edit().remove(KEY_DELETION_RULES_PREFIX + folderPath).apply();
+        } else {
+            prefs.edit().putString(KEY_DELETION_RULES_PREFIX + folderPath, rules.serialize()).apply();
+        }
+    }
+    
+    public DeletionRules getDeletionRules(String folderPath) {
+        // No rules means every file is a candidate
+        return DeletionRules.parse(prefs.getString(KEY_DELETION_RULES_PREFIX + folderPath, null));
+    }
+    
+    public void setSizeThreshold(String folderPath, long bytes) {
+        if (bytes <= 0) {
+            prefs.edit().remove(KEY_SIZE_THRESHOLD_PREFIX + folderPath).apply();
+        } else {
+            prefs.edit().putLong(KEY_SIZE_THRESHOLD_PREFIX + folderPath, bytes).apply();
+        }
+    }
+    
+    public long getSizeThreshold(String folderPath) {
+        return prefs.getLong(KEY_SIZE_THRESHOLD_PREFIX + folderPath, 0); // 0 means time-based only
+    }
+    
+    // Null removes the folder's own schedule, so it follows the global one
+    public void setFolderSchedule(String folderPath, FolderSchedule schedule) {
+        if (schedule == null) {
+            prefs.edit().remove(KEY_SCHEDULE_PREFIX + folderPath).apply();
+        } else {
+            prefs.edit().putString(KEY_SCHEDULE_PREFIX + folderPath, schedule.serialize()).apply();
+        }
+    }
+    
+    public FolderSchedule getFolderSchedule(String folderPath) {
+        return FolderSchedule.parse(prefs.getString(KEY_SCHEDULE_PREFIX + folderPath, null));
+    }
+    
+    // The folder's own schedule, or the global interval and time of day
+    @Override
+    public FolderSchedule getEffectiveSchedule(String folderPath) {
+        FolderSchedule schedule = getFolderSchedule(folderPath);
+        if (schedule == null) {
+            schedule = FolderSchedule.interval(getDeletionInterval(), getDeletionHour(), getDeletionMinute());
+        }
+        return schedule;
+    }
+    
+    // When a run last got through the folder, or the deadline it covered if
+    // it started early; the folder's next deadline is counted from it
+    @Override
+    public void setFolderLastRun(String folderPath, long timestamp) {
+        prefs.edit().putLong(KEY_LAST_RUN_PREFIX + folderPath, timestamp).apply();
+    }
+    
+    @Override
+    public long getFolderLastRun(String folderPath) {
+        return prefs.getLong(KEY_LAST_RUN_PREFIX + folderPath, 0);
+    }
+    
+    public void setCatchUpPolicy(int policy) {
+        prefs.edit().putInt(KEY_CATCH_UP_POLICY, policy).apply();
+    }
+    
+    @Override
+    public int getCatchUpPolicy() {
+        return prefs.getInt(KEY_CATCH_UP_POLICY, DeletionSchedule.CATCH_UP_COALESCE);
+    }
+    
+    public void setCatchUpMaxLatenessHours(int hours) {
+        prefs.edit().putInt(KEY_CATCH_UP_MAX_LATENESS, hours).apply();
+    }
+    
+    @Override
+    public int getCatchUpMaxLatenessHours() {
+        return prefs.getInt(KEY_CATCH_UP_MAX_LATENESS, 24); // 0 catches up however late
+    }
+    
+    public void setRunConstraints(RunConstraints constraints) {
+        if (constraints == null || constraints.isEmpty()) {
+            prefs.edit().remove(KEY_RUN_CONSTRAINTS).apply();
+        } else {
+            prefs.edit().putString(KEY_RUN_CONSTRAINTS, constraints.serialize()).apply();
+        }
+    }
+    
+    public RunConstraints getRunConstraints() {
+        // No constraints means scheduled runs start as soon as they are due
+        return RunConstraints.parse(prefs.getString(KEY_RUN_CONSTRAINTS, null));
+    }
+    
+    // Folders waiting for their run conditions, each with the time it runs
+    // regardless; stored as "deadline|path"
+    public void setDeferredRuns(Map<String, Long> deferred) {
+        Set<String> entries = new HashSet<>();
+        for (Map.Entry<String, Long> entry : deferred.entrySet()) {
+            entries.add(entry.getValue() + "|" + entry.getKey());
+        }
+        prefs.edit().putStringSet(KEY_DEFERRED_RUNS, entries).apply();
+    }
+    
+    @Override
+    public Map<String, Long> getDeferredRuns() {
+        Map<String, Long> deferred = new HashMap<>();
+        for (String entry : prefs.getStringSet(KEY_DEFERRED_RUNS, new HashSet<String>())) {
+            int separator = entry.indexOf('|');
+            if (separator > 0) {
+                try {
+                    deferred.put(entry.substring(separator + 1), Long.parseLong(entry.substring(0, separator)));
+                } catch (NumberFormatException e) {
+                    // A malformed entry is dropped
+                }
+            }
+        }
+        return deferred;
+    }
+    
     public void setSelectedFolders(List<String> folders) {
         Set<String> folderSet = new HashSet<>(folders);
         prefs.edit().putStringSet(KEY_SELECTED_FOLDERS, folderSet).apply();
     }
     
+    @Override
     public List<String> getSelectedFolders() {
         Set<String> folderSet = prefs.getStringSet(KEY_SELECTED_FOLDERS, new HashSet<String>());
         return new ArrayList<>(folderSet);
@@ -64,6 +282,7 @@ public class SettingsManager {
         return prefs.getBoolean(KEY_SERVICE_ENABLED, false);
     }
     
+    // Start of the last run that finished, whatever started it
     public void setLastDeletionTime(long timestamp) {
         prefs.edit().putLong(KEY_LAST_DELETION, timestamp).apply();
     }
@@ -72,24 +291,19 @@ public class SettingsManager {
         return prefs.getLong(KEY_LAST_DELETION, 0);
     }
     
-    public long getNextDeletionTime() {
-        long lastDeletion = getLastDeletionTime();
-        if (lastDeletion == 0) {
-            // If no previous deletion, schedule for next configured time
-            java.util.Calendar calendar = java.util.Calendar.getInstance();
-            calendar.set(java.util.Calendar.HOUR_OF_DAY, getDeletionHour());
-            calendar.set(java.util.Calendar.MINUTE, getDeletionMinute());
-            calendar.set(java.util.Calendar.SECOND, 0);
-            calendar.set(java.util.Calendar.MILLISECOND, 0);
-            
-            // If the time has passed today, schedule for tomorrow
-            if (calendar.getTimeInMillis() <= System.currentTimeMillis()) {
-                calendar.add(java.util.Calendar.DAY_OF_MONTH, 1);
-            }
-            
-            return calendar.getTimeInMillis();
-        }
-        
-        return lastDeletion + (getDeletionInterval() * 24 * 60 * 60 * 1000L);
+    public void setLastDeletionReport(DeletionReport report) {
+        prefs.edit().putString(KEY_LAST_REPORT, report.toJson()).apply();
+    }
+    
+    public DeletionReport getLastDeletionReport() {
+        return DeletionReport.fromJson(prefs.getString(KEY_LAST_REPORT, null));
+    }
+    
+    public void setLastPreviewReport(DeletionReport report) {
+        prefs.edit().putString(KEY_LAST_PREVIEW, report.toJson()).apply();
+    }
+    
+    public DeletionReport getLastPreviewReport() {
+        return DeletionReport.fromJson(prefs.getString(KEY_LAST_PREVIEW, null));
     }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.folderdeleter;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+// Purges folders still staged at boot, left by a run the reboot cut short.
+// The job hosts the purge so the process stays up for it, the way
+// FolderDeletionService hosts a run; a boot receiver would be gone long
+// before a large folder is deleted.
+public class StagedPurgeJobService extends JobService {
+    
+    private static final String TAG = "StagedPurgeJobService";
+    private static final int JOB_ID = 3004;
+    
+    public static void schedule(Context context) {
+        if (!new StagingArea(context).hasStagedEntries()) {
+            return;
+        }
+        
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, StagedPurgeJobService.class))
+            .setOverrideDeadline(0)
+            .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(TAG, "Failed to schedule staged purge");
+        }
+    }
+    
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        WakeupStats.record(this, WakeupStats.EVENT_JOB_TICK);
+        // A run in progress purges whatever is staged when it ends
+        return DeletionRunner.purgeAsync(getApplicationContext(), new DeletionRunner.Callback() {
+            @Override
+            public void onDeletionComplete(DeletionReport report) {
+                jobFinished(params, false);
+            }
+        });
+    }
+    
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Whatever is left stays staged for the next run's purge
+        return false;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.os.Environment;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StagingArea {
+    
+    private static final String TAG = "StagingArea";
+    private static final String STAGING_DIR_NAME = ".folderdeleter-staging";
+    private static final String NO_MEDIA_FILE = ".nomedia";
+    
+    private SettingsManager settingsManager;
+    
+    public StagingArea(Context context) {
+        this.settingsManager = new SettingsManager(context);
+    }
+    
+    // Moves the folder into a hidden staging directory on the same volume and
+    // recreates it empty. Returns the staged location, or null if the rename
+    // could not be committed and the caller has to delete in place.
+    public File stage(File folder) {
+        File stagingDir = getStagingDir(folder);
+        if (stagingDir == null) {
+            return null;
+        }
+        
+        if (!stagingDir.isDirectory() && !stagingDir.mkdirs()) {
+            Log.w(TAG, "Could not create staging directory: " + stagingDir.getAbsolutePath());
+            return null;
+        }
+        createNoMediaMarker(stagingDir);
+        
+        // Record the staging directory before the rename so a crash right
+        // after it still leaves the staged data discoverable
+        settingsManager.addStagingDir(stagingDir.getAbsolutePath());
+        
+        File staged = new File(stagingDir, folder.getName() + "-" + System.currentTimeMillis());
+        if (!folder.renameTo(staged)) {
+            Log.w(TAG, "Could not move folder to staging: " + folder.getAbsolutePath());
+            return null;
+        }
+        
+        if (!folder.mkdir()) {
+            Log.w(TAG, "Could not recreate folder after staging: " + folder.getAbsolutePath());
+        }
+        
+        Log.d(TAG, "Staged " + folder.getAbsolutePath() + " as " + staged.getAbsolutePath());
+        return staged;
+    }
+    
+    public List<File> getStagedEntries() {
+        List<File> entries = new ArrayList<>();
+        
+        for (String path : settingsManager.getStagingDirs()) {
+            File[] staged = new File(path).listFiles();
+            if (staged == null) {
+                continue;
+            }
+            for (File entry : staged) {
+                if (!entry.getName().equals(NO_MEDIA_FILE)) {
+                    entries.add(entry);
+                }
+            }
+        }
+        
+        return entries;
+    }
+    
+    public boolean hasStagedEntries() {
+        return !getStagedEntries().isEmpty();
+    }
+    
+    // Removes staging directories that no longer hold anything
+    public void releaseEmptyStagingDirs() {
+        for (String path : new ArrayList<>(settingsManager.getStagingDirs())) {
+            File stagingDir = new File(path);
+            new File(stagingDir, NO_MEDIA_FILE).delete();
+            
+            if (!stagingDir.exists() || stagingDir.delete()) {
+                settingsManager.removeStagingDir(path);
+            } else {
+                createNoMediaMarker(stagingDir);
+            }
+        }
+    }
+    
+    private File getStagingDir(File folder) {
+        File externalStorage = Environment.getExternalStorageDirectory();
+        if (externalStorage != null && isStrictlyInside(folder, externalStorage)) {
+            return new File(externalStorage, STAGING_DIR_NAME);
+        }
+        
+        File parent = folder.getAbsoluteFile().getParentFile();
+        return parent != null ? new File(parent, STAGING_DIR_NAME) : null;
+    }
+    
+    private boolean isStrictlyInside(File file, File root) {
+        String rootPath = root.getAbsolutePath();
+        return file.getAbsolutePath().startsWith(rootPath + File.separator);
+    }
+    
+    private void createNoMediaMarker(File stagingDir) {
+        // Keep the media scanner from indexing staged files
+        File marker = new File(stagingDir, NO_MEDIA_FILE);
+        try {
+            marker.createNewFile();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not create .nomedia in " + stagingDir.getAbsolutePath());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.folderdeleter;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Checks the folders that have a size threshold from a periodic job instead
+// of a resident watcher. JobScheduler batches it with other work and runs it
+// in maintenance windows, so it costs no wakeups of its own. Sizes come from
+// a fresh FolderSizeService scan, since its mtime cache misses files that
+// grow in place, such as a log being appended to.
+// A cleanup runs inside the job, which keeps the process up for it. While
+// the app is open, FolderWatcher reacts to growth immediately instead.
+public class ThresholdJobService extends JobService {
+    
+    private static final String TAG = "ThresholdJobService";
+    private static final int JOB_ID = 3001;
+    private static final long CHECK_INTERVAL_MILLIS = 60 * 60 * 1000L;
+    
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    
+    // Schedules the periodic check if scheduling is on and any folder has a
+    // threshold, and cancels it otherwise
+    public static void update(Context context) {
+        SettingsManager settingsManager = new SettingsManager(context);
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (!settingsManager.isServiceEnabled() || getThresholdFolders(settingsManager).isEmpty()) {
+            jobScheduler.cancel(JOB_ID);
+            return;
+        }
+        
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, ThresholdJobService.class))
+            .setPeriodic(CHECK_INTERVAL_MILLIS)
+            .setPersisted(true)
+            .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(TAG, "Failed to schedule threshold check");
+        }
+    }
+    
+    private static List<String> getThresholdFolders(SettingsManager settingsManager) {
+        List<String> folders = new ArrayList<>();
+        for (String folder : settingsManager.getSelectedFolders()) {
+            if (settingsManager.getSizeThreshold(folder) > 0) {
+                folders.add(folder);
+            }
+        }
+        return folders;
+    }
+    
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final Context context = getApplicationContext();
+        WakeupStats.record(context, WakeupStats.EVENT_JOB_TICK);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<String> overThreshold = new ArrayList<>();
+                if (!DeletionRunner.isRunInProgress()) {
+                    SettingsManager settingsManager = new SettingsManager(context);
+                    for (String folder : getThresholdFolders(settingsManager)) {
+                        long size = FolderSizeService.getInstance(context).getSize(new File(folder), true);
+                        if (size >= settingsManager.getSizeThreshold(folder)) {
+                            Log.d(TAG, folder + " is at " + size + " bytes, over its threshold");
+                            overThreshold.add(folder);
+                        }
+                    }
+                }
+                
+                // The job itself hosts the run, so the process stays up for it.
+                // Folders whose run conditions do not hold wait in the deferred queue.
+                FolderManager.PauseCheck pauseCheck = DeferredRunJobService.newPauseCheck(context);
+                boolean started = !overThreshold.isEmpty()
+                    && DeferredRunJobService.checkOrDefer(context, overThreshold, false)
+                    && DeletionRunner.runAsync(context, overThreshold, pauseCheck,
+                    new DeletionRunner.Callback() {
+                        @Override
+                        public void onDeletionComplete(DeletionReport report) {
+                            DeferredRunJobService.deferRemaining(context, report);
+                            NotificationHelper.showReportNotification(context, report);
+                            jobFinished(params, false);
+                        }
+                    });
+                if (!started) {
+                    jobFinished(params, false);
+                }
+            }
+        });
+        return true;
+    }
+    
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // A run cut short keeps its own wake lock and finishes or is resumed
+        // from the journal; the next period checks again either way
+        return false;
+    }
+}
\ No newline at end of file
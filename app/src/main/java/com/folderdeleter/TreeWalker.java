@@ -0,0 +1,236 @@
+package com.folderdeleter;
+
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+public class TreeWalker {
+    
+    private static final String TAG = "TreeWalker";
+    
+    // Each open DirectoryStream holds a file descriptor, so levels below this
+    // depth fall back to a name array instead of keeping another stream open
+    private static final int MAX_OPEN_STREAMS = 64;
+    
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+    
+    // Kinds of entry the walk reports to visitBoundary instead of entering
+    public static final int BOUNDARY_SYMLINK = 1;
+    public static final int BOUNDARY_MOUNT_POINT = 2;
+    
+    public abstract static class Visitor {
+        
+        // Return false to skip the directory's contents
+        public boolean preVisitDirectory(File dir, int depth) {
+            return true;
+        }
+        
+        // `stat` is the walk's own lstat of the file, so visitors need not
+        // stat it again; return false to stop the walk
+        public boolean visitFile(File file, FileStat stat, int depth) {
+            return true;
+        }
+        
+        // Called once all children have been visited; return false to stop the walk
+        public boolean postVisitDirectory(File dir, int depth) {
+            return true;
+        }
+        
+        // Called for a symlink (whatever it points to) or a directory on
+        // another device, neither of which is descended into; return false
+        // to stop the walk
+        public boolean visitBoundary(File entry, int depth, int kind) {
+            return true;
+        }
+        
+        // Override to decorate or account for directory listings
+        protected DirectoryCursor openDirectory(File dir, int openStreams) {
+            return open(dir, openStreams);
+        }
+    }
+    
+    // Walks the tree depth-first without recursion. Only one cursor per open
+    // directory level is kept, so memory grows with depth, not with width.
+    // Children are classified with lstat, so the walk never follows a
+    // symlink or crosses onto another device (a mount or bind mount inside
+    // the tree), which could otherwise lead outside the root or into a loop.
+    // Returns false if a visitor callback stopped the walk.
+    public static boolean walk(File root, int maxDepth, Visitor visitor) {
+        // The root itself is followed: it is the folder the caller chose
+        FileStat rootStat = FileStat.of(root);
+        if (!rootStat.isDirectory()) {
+            return visitor.visitFile(root, rootStat, 0);
+        }
+        
+        Deque<Frame> stack = new ArrayDeque<>();
+        if (visitor.preVisitDirectory(root, 0) && maxDepth > 0) {
+            stack.push(new Frame(root, 0, visitor.openDirectory(root, 0)));
+        } else {
+            return visitor.postVisitDirectory(root, 0);
+        }
+        
+        try {
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                File child = frame.cursor != null ? frame.cursor.next() : null;
+                
+                if (child == null) {
+                    stack.pop();
+                    frame.close();
+                    if (!visitor.postVisitDirectory(frame.dir, frame.depth)) {
+                        return false;
+                    }
+                    continue;
+                }
+                
+                int childDepth = frame.depth + 1;
+                FileStat stat = FileStat.lstat(child);
+                if (stat.isSymbolicLink()) {
+                    if (!visitor.visitBoundary(child, childDepth, BOUNDARY_SYMLINK)) {
+                        return false;
+                    }
+                } else if (stat.isDirectory() && stat.isOnOtherDevice(rootStat.device)) {
+                    if (!visitor.visitBoundary(child, childDepth, BOUNDARY_MOUNT_POINT)) {
+                        return false;
+                    }
+                } else if (stat.isDirectory()) {
+                    if (visitor.preVisitDirectory(child, childDepth) && childDepth < maxDepth) {
+                        stack.push(new Frame(child, childDepth, visitor.openDirectory(child, stack.size())));
+                    } else if (!visitor.postVisitDirectory(child, childDepth)) {
+                        return false;
+                    }
+                } else if (!visitor.visitFile(child, stat, childDepth)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            while (!stack.isEmpty()) {
+                stack.pop().close();
+            }
+        }
+    }
+    
+    // Streams the direct children of a single directory. Returns null if the
+    // directory cannot be listed, mirroring File.listFiles().
+    public static DirectoryCursor open(File dir) {
+        return open(dir, 0);
+    }
+    
+    static DirectoryCursor open(File dir, int openStreams) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && openStreams < MAX_OPEN_STREAMS) {
+            DirectoryCursor cursor = StreamCursor.open(dir);
+            if (cursor != null) {
+                return cursor;
+            }
+        }
+        
+        String[] names = dir.list();
+        return names != null ? new ArrayCursor(dir, names) : null;
+    }
+    
+    public interface DirectoryCursor {
+        
+        // Returns the next child, or null once the directory is exhausted
+        File next();
+        
+        void close();
+    }
+    
+    private static class Frame {
+        
+        final File dir;
+        final int depth;
+        final DirectoryCursor cursor;
+        
+        Frame(File dir, int depth, DirectoryCursor cursor) {
+            this.dir = dir;
+            this.depth = depth;
+            this.cursor = cursor;
+        }
+        
+        void close() {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    private static class ArrayCursor implements DirectoryCursor {
+        
+        private final File dir;
+        private String[] names;
+        private int index;
+        
+        ArrayCursor(File dir, String[] names) {
+            this.dir = dir;
+            this.names = names;
+        }
+        
+        @Override
+        public File next() {
+            if (names == null || index >= names.length) {
+                return null;
+            }
+            return new File(dir, names[index++]);
+        }
+        
+        @Override
+        public void close() {
+            names = null;
+        }
+    }
+    
+    @RequiresApi(Build.VERSION_CODES.O)
+    private static class StreamCursor implements DirectoryCursor {
+        
+        private final File dir;
+        private final DirectoryStream<Path> stream;
+        private final Iterator<Path> iterator;
+        
+        private StreamCursor(File dir, DirectoryStream<Path> stream) {
+            this.dir = dir;
+            this.stream = stream;
+            this.iterator = stream.iterator();
+        }
+        
+        static DirectoryCursor open(File dir) {
+            try {
+                return new StreamCursor(dir, Files.newDirectoryStream(dir.toPath()));
+            } catch (IOException | SecurityException e) {
+                Log.w(TAG, "Cannot open directory stream: " + dir.getAbsolutePath());
+                return null;
+            }
+        }
+        
+        @Override
+        public File next() {
+            try {
+                if (iterator.hasNext()) {
+                    return new File(dir, iterator.next().getFileName().toString());
+                }
+            } catch (DirectoryIteratorException e) {
+                Log.w(TAG, "Error reading directory: " + dir.getAbsolutePath(), e);
+            }
+            return null;
+        }
+        
+        @Override
+        public void close() {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing directory stream: " + dir.getAbsolutePath(), e);
+            }
+        }
+    }
+}
\ No newline at end of file
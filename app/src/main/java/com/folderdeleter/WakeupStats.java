@@ -0,0 +1,201 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Locale;
+
+// What the app costs in wakeups, kept as one row of counters per day in a
+// ring of the last DAYS days. Every broadcast AlarmReceiver gets, every
+// deletion alarm that fires or is armed, every run service start, every
+// periodic job tick and every wake lock acquire and release (with how long
+// it was held) is counted here. The ring is a few hundred bytes and is
+// rewritten as a whole on each event, which happens a handful of times a
+// day. Rows are serialized with '|' like ExpiryPolicy, one per line.
+public class WakeupStats {
+    
+    private static final String TAG = "WakeupStats";
+    private static final String STATS_FILE = "wakeup.stats";
+    private static final int DAYS = 14;
+    
+    public static final int EVENT_RECEIVER = 0;
+    public static final int EVENT_ALARM_FIRED = 1;
+    public static final int EVENT_ALARM_ARMED = 2;
+    public static final int EVENT_SERVICE_START = 3;
+    public static final int EVENT_JOB_TICK = 4;
+    public static final int EVENT_WAKE_LOCK_ACQUIRED = 5;
+    public static final int EVENT_WAKE_LOCK_RELEASED = 6;
+    private static final int EVENT_COUNT = 7;
+    
+    private static final String[] EVENT_LABELS = {
+        "Receiver calls", "Alarms fired", "Alarms armed", "Service starts",
+        "Job ticks", "Wake locks acquired", "Wake locks released"
+    };
+    
+    private static WakeupStats instance;
+    
+    private final File statsFile;
+    private final Calendar calendar = Calendar.getInstance();
+    // Oldest first once full; head is the slot the next new day takes
+    private final Day[] days = new Day[DAYS];
+    private int head;
+    
+    private static class Day {
+        
+        final int date; // yyyymmdd, local time
+        final long[] counts = new long[EVENT_COUNT];
+        long wakeLockHeldMillis;
+        long longestWakeLockMillis;
+        
+        Day(int date) {
+            this.date = date;
+        }
+    }
+    
+    public static synchronized WakeupStats getInstance(Context context) {
+        if (instance == null) {
+            instance = new WakeupStats(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    // Shorthand for the call sites, which have nothing else to do with it
+    public static void record(Context context, int event) {
+        getInstance(context).record(event);
+    }
+    
+    private WakeupStats(Context appContext) {
+        this.statsFile = new File(appContext.getFilesDir(), STATS_FILE);
+        load();
+    }
+    
+    public synchronized void record(int event) {
+        today().counts[event]++;
+        save();
+    }
+    
+    // A wake lock held for `heldMillis` was just released
+    public synchronized void recordWakeLockReleased(long heldMillis) {
+        Day day = today();
+        day.counts[EVENT_WAKE_LOCK_RELEASED]++;
+        day.wakeLockHeldMillis += heldMillis;
+        day.longestWakeLockMillis = Math.max(day.longestWakeLockMillis, heldMillis);
+        save();
+    }
+    
+    private Day today() {
+        calendar.setTimeInMillis(System.currentTimeMillis());
+        int date = calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+            + calendar.get(Calendar.DAY_OF_MONTH);
+        Day latest = days[(head + DAYS - 1) % DAYS];
+        if (latest != null && latest.date == date) {
+            return latest;
+        }
+        
+        // A new day overwrites the oldest; days without events get no row
+        Day day = new Day(date);
+        days[head] = day;
+        head = (head + 1) % DAYS;
+        return day;
+    }
+    
+    // Human-readable rows, newest first, for the app and for logs
+    public synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= DAYS; i++) {
+            Day day = days[(head + DAYS - i) % DAYS];
+            if (day == null) {
+                break;
+            }
+            
+            sb.append(String.format(Locale.US, "%04d-%02d-%02d\n", day.date / 10000, day.date / 100 % 100, day.date % 100));
+            for (int event = 0; event < EVENT_COUNT; event++) {
+                sb.append("  ").append(EVENT_LABELS[event]).append(": ").append(day.counts[event]).append("\n");
+            }
+            sb.append("  Wake lock held: ").append(formatDuration(day.wakeLockHeldMillis))
+                .append(" (longest ").append(formatDuration(day.longestWakeLockMillis)).append(")\n");
+        }
+        return sb.length() > 0 ? sb.toString() : "No wakeups recorded yet\n";
+    }
+    
+    private static String formatDuration(long millis) {
+        return String.format(Locale.US, "%d.%03d s", millis / 1000, millis % 1000);
+    }
+    
+    public synchronized void clear() {
+        for (int i = 0; i < DAYS; i++) {
+            days[i] = null;
+        }
+        head = 0;
+        save();
+    }
+    
+    private void load() {
+        if (!statsFile.exists()) {
+            return;
+        }
+        
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(statsFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Day day = parseDay(line);
+                if (day != null) {
+                    days[head] = day;
+                    head = (head + 1) % DAYS;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read wakeup stats, starting over", e);
+            clear();
+        }
+    }
+    
+    // date|count...|heldMillis|longestMillis
+    private static Day parseDay(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length != EVENT_COUNT + 3) {
+            return null;
+        }
+        
+        try {
+            Day day = new Day(Integer.parseInt(parts[0]));
+            for (int event = 0; event < EVENT_COUNT; event++) {
+                day.counts[event] = Long.parseLong(parts[event + 1]);
+            }
+            day.wakeLockHeldMillis = Long.parseLong(parts[EVENT_COUNT + 1]);
+            day.longestWakeLockMillis = Long.parseLong(parts[EVENT_COUNT + 2]);
+            return day;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private void save() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < DAYS; i++) {
+            Day day = days[(head + i) % DAYS];
+            if (day == null) {
+                continue;
+            }
+            sb.append(day.date);
+            for (long count : day.counts) {
+                sb.append('|').append(count);
+            }
+            sb.append('|').append(day.wakeLockHeldMillis).append('|').append(day.longestWakeLockMillis).append('\n');
+        }
+        
+        try (FileOutputStream out = new FileOutputStream(statsFile)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write wakeup stats", e);
+        }
+    }
+}
\ No newline at end of file
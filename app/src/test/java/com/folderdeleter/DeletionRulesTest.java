@@ -0,0 +1,46 @@
+package com.folderdeleter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DeletionRulesTest {
+    
+    // State of the directory at the given path below the selected folder
+    private static DeletionRules.State enter(DeletionRules rules, String path) {
+        DeletionRules.State state = rules.getRootState();
+        for (String name : path.split("/")) {
+            state = rules.enterDirectory(state, name);
+        }
+        return state;
+    }
+    
+    @Test
+    public void leadingStarExcludeMatchesAtAnyDepth() {
+        DeletionRules rules = DeletionRules.parse("-*/Starred/*");
+        
+        assertTrue(enter(rules, "a/Starred/b").isExcluded());
+        assertTrue(enter(rules, "a/b/c/Starred/d").isExcluded());
+        assertFalse(rules.isFileDeleted(enter(rules, "a/b/c/Starred"), "photo.jpg"));
+        assertTrue(rules.isFileDeleted(enter(rules, "a/b/c"), "photo.jpg"));
+    }
+    
+    @Test
+    public void excludedSubtreeDeeperThanTwoLevelsIsPruned() {
+        DeletionRules rules = DeletionRules.parse("-*/Starred/");
+        
+        DeletionRules.State starred = enter(rules, "a/b/c/Starred");
+        assertTrue(starred.isExcluded());
+        assertFalse(rules.isFileDeleted(enter(rules, "a/b/c/Starred/x/y"), "photo.jpg"));
+        assertFalse(enter(rules, "a/b/c").isExcluded());
+    }
+    
+    @Test
+    public void leadingSlashKeepsThePatternAnchored() {
+        DeletionRules rules = DeletionRules.parse("-/*/Starred/");
+        
+        assertTrue(enter(rules, "a/Starred").isExcluded());
+        assertFalse(enter(rules, "a/b/Starred").isExcluded());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.folderdeleter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import org.junit.Test;
+
+public class DeletionScheduleTest {
+    
+    private static final String FOLDER = "/storage/emulated/0/Download";
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    
+    private static class FakeSettings implements DeletionSchedule.Settings {
+        
+        final List<String> folders = new ArrayList<>();
+        final Map<String, FolderSchedule> schedules = new HashMap<>();
+        final Map<String, Long> lastRuns = new HashMap<>();
+        final Map<String, Long> deferredRuns = new HashMap<>();
+        int catchUpPolicy = DeletionSchedule.CATCH_UP_COALESCE;
+        int maxLatenessHours;
+        
+        void add(String folderPath, FolderSchedule schedule, long lastRun) {
+            folders.add(folderPath);
+            schedules.put(folderPath, schedule);
+            lastRuns.put(folderPath, lastRun);
+        }
+        
+        @Override
+        public List<String> getSelectedFolders() {
+            return folders;
+        }
+        
+        @Override
+        public FolderSchedule getEffectiveSchedule(String folderPath) {
+            return schedules.get(folderPath);
+        }
+        
+        @Override
+        public long getFolderLastRun(String folderPath) {
+            Long lastRun = lastRuns.get(folderPath);
+            return lastRun != null ? lastRun : 0;
+        }
+        
+        @Override
+        public void setFolderLastRun(String folderPath, long timestamp) {
+            lastRuns.put(folderPath, timestamp);
+        }
+        
+        @Override
+        public int getCatchUpPolicy() {
+            return catchUpPolicy;
+        }
+        
+        @Override
+        public int getCatchUpMaxLatenessHours() {
+            return maxLatenessHours;
+        }
+        
+        @Override
+        public Map<String, Long> getDeferredRuns() {
+            return deferredRuns;
+        }
+    }
+    
+    private static Calendar calendar() {
+        return Calendar.getInstance(UTC);
+    }
+    
+    // Months are 1-based here, unlike Calendar
+    private static long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = calendar();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+    
+    // Daily at 02:00, last run three days before `now`, so two runs were missed
+    private static FakeSettings missedTwoRuns(int policy) {
+        FakeSettings settings = new FakeSettings();
+        settings.add(FOLDER, FolderSchedule.interval(1, 2, 0), time(2026, 3, 1, 2, 0));
+        settings.catchUpPolicy = policy;
+        return settings;
+    }
+    
+    @Test
+    public void coalescePolicyRunsMissedRunsOnceRightAway() {
+        long now = time(2026, 3, 4, 1, 0);
+        FakeSettings settings = missedTwoRuns(DeletionSchedule.CATCH_UP_COALESCE);
+        DeletionSchedule schedule = new DeletionSchedule(settings, now, calendar());
+        
+        assertEquals(now, schedule.peek().time);
+        assertFalse(schedule.hasDeferred());
+        assertEquals(Collections.singletonList(FOLDER), schedule.pollDue(now));
+        // Counted as run now, so the next alarm is the regular one
+        assertEquals(time(2026, 3, 5, 2, 0), schedule.peek().time);
+    }
+    
+    @Test
+    public void idlePolicyDefersMissedRunsAndKeepsTheRegularDeadline() {
+        long now = time(2026, 3, 4, 1, 0);
+        FakeSettings settings = missedTwoRuns(DeletionSchedule.CATCH_UP_WHEN_IDLE);
+        DeletionSchedule schedule = new DeletionSchedule(settings, now, calendar());
+        
+        assertTrue(schedule.hasDeferred());
+        assertEquals(time(2026, 3, 4, 2, 0), schedule.peek().time);
+        assertEquals(Collections.singletonList(FOLDER), schedule.pollDeferred(now));
+        assertFalse(schedule.hasDeferred());
+    }
+    
+    @Test
+    public void skipPolicyWaitsForTheNextDeadline() {
+        long now = time(2026, 3, 4, 1, 0);
+        FakeSettings settings = missedTwoRuns(DeletionSchedule.CATCH_UP_SKIP);
+        DeletionSchedule schedule = new DeletionSchedule(settings, now, calendar());
+        
+        assertFalse(schedule.hasDeferred());
+        assertEquals(time(2026, 3, 4, 2, 0), schedule.peek().time);
+        assertTrue(schedule.pollDue(now).isEmpty());
+    }
+    
+    @Test
+    public void missedRunsPastTheMaximumLatenessAreSkipped() {
+        // Weekly; the only missed run was three days ago
+        long now = time(2026, 3, 11, 2, 0);
+        FakeSettings settings = new FakeSettings();
+        settings.add(FOLDER, FolderSchedule.interval(7, 2, 0), time(2026, 3, 1, 2, 0));
+        settings.maxLatenessHours = 24;
+        DeletionSchedule schedule = new DeletionSchedule(settings, now, calendar());
+        
+        assertEquals(time(2026, 3, 15, 2, 0), schedule.peek().time);
+    }
+    
+    @Test
+    public void foldersInTheDeferredQueueAreNotScheduled() {
+        long now = time(2026, 3, 4, 1, 0);
+        FakeSettings settings = missedTwoRuns(DeletionSchedule.CATCH_UP_COALESCE);
+        settings.deferredRuns.put(FOLDER, now + 60 * MINUTE_MILLIS);
+        
+        assertEquals(null, new DeletionSchedule(settings, now, calendar()).peek());
+    }
+    
+    @Test
+    public void pollDueLeavesLastRunToTheFinishedRun() {
+        long lastRun = time(2026, 3, 3, 2, 0);
+        long now = time(2026, 3, 4, 1, 55);
+        FakeSettings settings = new FakeSettings();
+        settings.add(FOLDER, FolderSchedule.cron("0 2 * * *"), lastRun);
+        
+        List<String> due = new DeletionSchedule(settings, now, calendar()).pollDue(now);
+        assertEquals(Collections.singletonList(FOLDER), due);
+        assertEquals(lastRun, settings.getFolderLastRun(FOLDER));
+        
+        // Started five minutes early, so it covers the 02:00 deadline
+        DeletionReport report = new DeletionReport(now);
+        report.addFolder(new DeletionReport.FolderReport(FOLDER));
+        DeletionSchedule.recordRuns(settings, report, calendar());
+        assertEquals(time(2026, 3, 4, 2, 0), settings.getFolderLastRun(FOLDER));
+        assertEquals(time(2026, 3, 5, 2, 0),
+            new DeletionSchedule(settings, now + 10 * MINUTE_MILLIS, calendar()).peek().time);
+    }
+    
+    @Test
+    public void deferredFoldersOfAFinishedRunStayDue() {
+        long lastRun = time(2026, 3, 3, 2, 0);
+        long now = time(2026, 3, 4, 2, 0);
+        String other = "/storage/emulated/0/Movies";
+        FakeSettings settings = new FakeSettings();
+        settings.add(FOLDER, FolderSchedule.interval(1, 2, 0), lastRun);
+        settings.add(other, FolderSchedule.interval(1, 2, 0), lastRun);
+        
+        DeletionReport report = new DeletionReport(now);
+        report.addFolder(new DeletionReport.FolderReport(FOLDER));
+        report.addFolder(new DeletionReport.FolderReport(other));
+        report.setDeferredFolders(Arrays.asList(other));
+        DeletionSchedule.recordRuns(settings, report, calendar());
+        
+        assertEquals(now, settings.getFolderLastRun(FOLDER));
+        assertEquals(lastRun, settings.getFolderLastRun(other));
+    }
+}
\ No newline at end of file
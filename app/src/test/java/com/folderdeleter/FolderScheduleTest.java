@@ -0,0 +1,89 @@
+package com.folderdeleter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import org.junit.Test;
+
+public class FolderScheduleTest {
+    
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    
+    private static Calendar calendar() {
+        return Calendar.getInstance(NEW_YORK);
+    }
+    
+    // Months are 1-based here, unlike Calendar
+    private static long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = calendar();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+    
+    @Test
+    public void intervalKeepsTimeOfDayAcrossSpringForward() {
+        // Clocks go forward on 2026-03-08, so that day is 23 hours long
+        FolderSchedule schedule = FolderSchedule.interval(1, 3, 0);
+        long lastRun = time(2026, 3, 7, 3, 0);
+        
+        long next = schedule.nextFireTime(lastRun, lastRun, calendar());
+        
+        assertEquals(time(2026, 3, 8, 3, 0), next);
+        assertEquals(23 * HOUR_MILLIS, next - lastRun);
+    }
+    
+    @Test
+    public void intervalKeepsTimeOfDayAcrossFallBack() {
+        // Clocks go back on 2026-11-01, so that day is 25 hours long
+        FolderSchedule schedule = FolderSchedule.interval(1, 3, 0);
+        long lastRun = time(2026, 10, 31, 3, 0);
+        
+        long next = schedule.nextFireTime(lastRun, lastRun, calendar());
+        
+        assertEquals(time(2026, 11, 1, 3, 0), next);
+        assertEquals(25 * HOUR_MILLIS, next - lastRun);
+    }
+    
+    @Test
+    public void intervalSkipsLongGapAcrossDst() {
+        // The jump over whole periods comes up an hour short after DST
+        // started; the result must still be on the interval's day grid
+        FolderSchedule schedule = FolderSchedule.interval(3, 3, 0);
+        // Every third day from 02-01 at 03:00: 03-18, 03-21, ...
+        long lastRun = time(2026, 2, 1, 3, 0);
+        
+        long next = schedule.nextFireTime(lastRun, time(2026, 3, 20, 12, 0), calendar());
+        
+        assertEquals(time(2026, 3, 21, 3, 0), next);
+    }
+    
+    @Test
+    public void cronMatchesEitherRestrictedDayField() {
+        // The 10th, or any Monday; 2026-03-10 is a Tuesday
+        FolderSchedule schedule = FolderSchedule.cron("0 3 10 * 1");
+        Calendar calendar = calendar();
+        
+        long first = schedule.nextFireTime(0, time(2026, 3, 1, 0, 0), calendar);
+        long second = schedule.nextFireTime(0, first, calendar);
+        long third = schedule.nextFireTime(0, second, calendar);
+        long fourth = schedule.nextFireTime(0, third, calendar);
+        
+        assertEquals(time(2026, 3, 2, 3, 0), first);
+        assertEquals(time(2026, 3, 9, 3, 0), second);
+        assertEquals(time(2026, 3, 10, 3, 0), third);
+        assertEquals(time(2026, 3, 16, 3, 0), fourth);
+    }
+    
+    @Test
+    public void cronMatchesOnlyTheRestrictedDayField() {
+        FolderSchedule byDayOfMonth = FolderSchedule.cron("0 3 10 * *");
+        FolderSchedule byDayOfWeek = FolderSchedule.cron("0 3 * * 1");
+        long after = time(2026, 3, 1, 0, 0);
+        
+        assertEquals(time(2026, 3, 10, 3, 0), byDayOfMonth.nextFireTime(0, after, calendar()));
+        assertEquals(time(2026, 3, 2, 3, 0), byDayOfWeek.nextFireTime(0, after, calendar()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.folderdeleter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelDeletionEngineTest {
+    
+    private static final String UNDELETABLE = "undeletable";
+    
+    private File workDir;
+    
+    // Fails to unlink one file name, as a file held by another app would
+    private static class FailingRun extends DeletionRun {
+        
+        FailingRun() {
+            super((DeletionJournal) null, (DeletionThrottle) null);
+        }
+        
+        @Override
+        public boolean deleteFile(File file, FileStat stat) {
+            return !file.getName().equals(UNDELETABLE) && super.deleteFile(file, stat);
+        }
+        
+        @Override
+        public boolean isProtectedDirectory(File dir) {
+            return false;
+        }
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("engine-test").toFile();
+    }
+    
+    @After
+    public void tearDown() {
+        remove(workDir);
+    }
+    
+    private static void remove(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                remove(child);
+            }
+        }
+        file.delete();
+    }
+    
+    private static void createFile(File dir, String name) throws IOException {
+        dir.mkdirs();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, name))) {
+            out.write(new byte[16]);
+        }
+    }
+    
+    // Root with `width` subtrees, each `depth` levels deep with a few files per level
+    private File createTree(String name, int width, int depth) throws IOException {
+        File root = new File(workDir, name);
+        for (int i = 0; i < width; i++) {
+            File dir = root;
+            for (int level = 0; level < depth; level++) {
+                dir = new File(dir, "d" + i + "_" + level);
+                for (int f = 0; f < 3; f++) {
+                    createFile(dir, "f" + f);
+                }
+            }
+        }
+        return root;
+    }
+    
+    // Relative paths of the directories left under `root`, the root included
+    private static Set<String> directoriesLeft(File root) {
+        Set<String> dirs = new TreeSet<>();
+        collectDirectories(root, root.getAbsolutePath().length(), dirs);
+        return dirs;
+    }
+    
+    private static void collectDirectories(File dir, int prefix, Set<String> dirs) {
+        if (!dir.isDirectory()) {
+            return;
+        }
+        dirs.add("/" + dir.getAbsolutePath().substring(prefix));
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                collectDirectories(child, prefix, dirs);
+            }
+        }
+    }
+    
+    private static boolean expireInParallel(File root, int parallelism) {
+        ParallelDeletionEngine engine = new ParallelDeletionEngine(parallelism);
+        try {
+            return engine.expire(root, null, null, new FailingRun());
+        } finally {
+            engine.shutdown();
+        }
+    }
+    
+    private static boolean deleteInParallel(File root, int parallelism) {
+        ParallelDeletionEngine engine = new ParallelDeletionEngine(parallelism);
+        try {
+            return engine.delete(root, new FailingRun());
+        } finally {
+            engine.shutdown();
+        }
+    }
+    
+    @Test
+    public void bothDeleteAWholeTree() throws IOException {
+        File sequential = createTree("sequential", 8, 4);
+        File parallel = createTree("parallel", 8, 4);
+        
+        assertTrue(FolderManager.deleteRecursively(sequential, new FailingRun()));
+        assertTrue(deleteInParallel(parallel, 4));
+        assertFalse(sequential.exists());
+        assertFalse(parallel.exists());
+    }
+    
+    @Test
+    public void undeletableFileGivesTheSameResultAndLeftovers() throws IOException {
+        // A single chain, so which directories survive does not depend on
+        // the order entries are listed in
+        File sequential = new File(workDir, "sequential");
+        File parallel = new File(workDir, "parallel");
+        for (File root : new File[] {sequential, parallel}) {
+            createFile(new File(root, "a"), "f0");
+            createFile(new File(root, "a/b"), "f1");
+            createFile(new File(root, "a/b/c"), UNDELETABLE);
+        }
+        
+        boolean sequentialResult = FolderManager.deleteRecursively(sequential, new FailingRun());
+        boolean parallelResult = deleteInParallel(parallel, 4);
+        
+        assertFalse(sequentialResult);
+        assertEquals(sequentialResult, parallelResult);
+        assertEquals(directoriesLeft(sequential), directoriesLeft(parallel));
+        assertTrue(new File(parallel, "a/b/c/" + UNDELETABLE).exists());
+    }
+    
+    @Test
+    public void directoriesAreRemovedOnlyAfterTheirChildren() throws IOException {
+        File root = createTree("parallel", 16, 6);
+        File failing = new File(root, "d7_0/d7_1/d7_2/d7_3");
+        createFile(failing, UNDELETABLE);
+        
+        assertFalse(deleteInParallel(root, 4));
+        
+        // Every directory on the way to the failure is kept, and no
+        // directory is gone while something below it is still there
+        for (File dir = failing; !dir.equals(workDir); dir = dir.getParentFile()) {
+            assertTrue(dir.getPath(), dir.isDirectory());
+        }
+        for (String path : directoriesLeft(root)) {
+            File dir = new File(root, path);
+            assertTrue(path, dir.getParentFile().isDirectory());
+        }
+    }
+    
+    @Test
+    public void expiryPrunesOnlyTheDirectoriesItEmptied() throws IOException {
+        File sequential = new File(workDir, "sequential");
+        File parallel = new File(workDir, "parallel");
+        for (File root : new File[] {sequential, parallel}) {
+            createFile(new File(root, "a"), "f0");
+            createFile(new File(root, "b/c"), "f1");
+            new File(root, "b/empty").mkdirs();
+            new File(root, "empty").mkdirs();
+        }
+        
+        assertTrue(FolderManager.expireRecursively(sequential, null, null, new FailingRun()));
+        assertTrue(expireInParallel(parallel, 4));
+        
+        // b still holds a directory that was empty before the pass
+        assertEquals(directoriesLeft(sequential), directoriesLeft(parallel));
+        for (String path : new String[] {"b/empty", "empty"}) {
+            assertTrue(path, new File(parallel, path).isDirectory());
+        }
+        assertFalse(new File(parallel, "a").exists());
+        assertFalse(new File(parallel, "b/c").exists());
+    }
+}
\ No newline at end of file
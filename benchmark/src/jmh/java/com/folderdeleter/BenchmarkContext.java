@@ -0,0 +1,162 @@
+package com.folderdeleter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Minimal Context so FolderManager can be constructed on a plain JVM
+class BenchmarkContext extends Context {
+    
+    private final File filesDir;
+    private final InMemoryPreferences prefs = new InMemoryPreferences();
+    
+    BenchmarkContext(File filesDir) {
+        this.filesDir = filesDir;
+    }
+    
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return prefs;
+    }
+    
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+    
+    private static class InMemoryPreferences implements SharedPreferences {
+        
+        private final Map<String, Object> values = new HashMap<>();
+        
+        @Override
+        public synchronized Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+        
+        @Override
+        public String getString(String key, String defValue) {
+            return (String) get(key, defValue);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return (Set<String>) get(key, defValues);
+        }
+        
+        @Override
+        public int getInt(String key, int defValue) {
+            return (Integer) get(key, defValue);
+        }
+        
+        @Override
+        public long getLong(String key, long defValue) {
+            return (Long) get(key, defValue);
+        }
+        
+        @Override
+        public float getFloat(String key, float defValue) {
+            return (Float) get(key, defValue);
+        }
+        
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return (Boolean) get(key, defValue);
+        }
+        
+        @Override
+        public synchronized boolean contains(String key) {
+            return values.containsKey(key);
+        }
+        
+        private synchronized Object get(String key, Object defValue) {
+            Object value = values.get(key);
+            return value != null ? value : defValue;
+        }
+        
+        @Override
+        public Editor edit() {
+            return new InMemoryEditor();
+        }
+        
+        private class InMemoryEditor implements Editor {
+            
+            private final Map<String, Object> pending = new HashMap<>();
+            private boolean clear;
+            
+            @Override
+            public Editor putString(String key, String value) {
+                pending.put(key, value);
+                return this;
+            }
+            
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                pending.put(key, values != null ? new HashSet<>(values) : null);
+                return this;
+            }
+            
+            @Override
+            public Editor putInt(String key, int value) {
+                pending.put(key, value);
+                return this;
+            }
+            
+            @Override
+            public Editor putLong(String key, long value) {
+                pending.put(key, value);
+                return this;
+            }
+            
+            @Override
+            public Editor putFloat(String key, float value) {
+                pending.put(key, value);
+                return this;
+            }
+            
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                pending.put(key, value);
+                return this;
+            }
+            
+            @Override
+            public Editor remove(String key) {
+                pending.put(key, null);
+                return this;
+            }
+            
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+            
+            @Override
+            public boolean commit() {
+                synchronized (InMemoryPreferences.this) {
+                    if (clear) {
+                        values.clear();
+                    }
+                    for (Map.Entry<String, Object> entry : pending.entrySet()) {
+                        if (entry.getValue() == null) {
+                            values.remove(entry.getKey());
+                        } else {
+                            values.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                return true;
+            }
+            
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.folderdeleter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Each iteration deletes one freshly generated tree, so SingleShotTime
+// measures a complete run without the generation cost
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeletionBenchmark {
+    
+    @Param({"WIDE_FLAT", "DEEP_NARROW", "MANY_SMALL_FILES", "FEW_HUGE_FILES"})
+    public TreeShape shape;
+    
+    // "sequential" is FolderManager.deleteRecursively; a number selects the
+    // parallel engine with that many workers
+    @Param({"sequential", "2", "4"})
+    public String engine;
+    
+    private File workDir;
+    private File tree;
+    private ParallelDeletionEngine parallelEngine;
+    
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        workDir = Files.createTempDirectory("folderdeleter-bench").toFile();
+        if (!"sequential".equals(engine)) {
+            parallelEngine = new ParallelDeletionEngine(Integer.parseInt(engine));
+        }
+    }
+    
+    @Setup(Level.Iteration)
+    public void createTree() throws IOException {
+        tree = new File(workDir, "tree");
+        shape.create(tree);
+    }
+    
+    @Benchmark
+    public boolean delete() {
+        DeletionRun run = new DeletionRun(null, null);
+        return parallelEngine != null
+            ? parallelEngine.delete(tree, run)
+            : FolderManager.deleteRecursively(tree, run);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void removeLeftovers() {
+        TreeShape.deleteQuietly(tree);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        if (parallelEngine != null) {
+            parallelEngine.shutdown();
+        }
+        TreeShape.deleteQuietly(workDir);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.folderdeleter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// DeletionRules is consulted for every entry of a filtered walk. "compiled"
+// steps the rule trie one segment at a time as the walk does; "naive" tests
+// every rule's regex against the full relative path, for comparison.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeletionRulesBenchmark {
+    
+    private static final String[] DIRECTORIES = {
+        "WhatsApp", "Media", "Images", "Video", "Documents", "Starred", "Sent", "Private", ".Statuses"
+    };
+    private static final String[] EXTENSIONS = {"jpg", "mp4", "pdf", "tmp", "log", "opus", "txt"};
+    
+    @Param({"4", "32"})
+    public int ruleCount;
+    
+    private DeletionRules rules;
+    private List<Pattern> naiveRules;
+    private List<String[]> paths;
+    
+    @Setup
+    public void setUp() {
+        List<String> lines = new ArrayList<>();
+        lines.add("+*.tmp|*.log");
+        lines.add("-*.pdf");
+        lines.add("-*/Starred/*");
+        lines.add("-Private/");
+        for (int i = lines.size(); i < ruleCount; i++) {
+            lines.add("-*/Archive-" + i + "/*.bak");
+        }
+        rules = new DeletionRules(lines);
+        
+        naiveRules = new ArrayList<>();
+        for (String line : lines) {
+            for (String glob : line.substring(1).split("\\|")) {
+                naiveRules.add(Pattern.compile(toRegex(glob)));
+            }
+        }
+        
+        Random random = new Random(42);
+        paths = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String[] segments = new String[1 + random.nextInt(5)];
+            for (int j = 0; j < segments.length - 1; j++) {
+                segments[j] = DIRECTORIES[random.nextInt(DIRECTORIES.length)];
+            }
+            segments[segments.length - 1] = "file-" + i + "." + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            paths.add(segments);
+        }
+    }
+    
+    @Benchmark
+    public int compiled() {
+        int deleted = 0;
+        for (String[] segments : paths) {
+            DeletionRules.State state = rules.getRootState();
+            for (int i = 0; i < segments.length - 1 && !state.isExcluded(); i++) {
+                state = rules.enterDirectory(state, segments[i]);
+            }
+            if (rules.isFileDeleted(state, segments[segments.length - 1])) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+    
+    @Benchmark
+    public int naive() {
+        int matched = 0;
+        StringBuilder sb = new StringBuilder();
+        for (String[] segments : paths) {
+            sb.setLength(0);
+            for (String segment : segments) {
+                if (sb.length() > 0) {
+                    sb.append('/');
+                }
+                sb.append(segment);
+            }
+            String path = sb.toString();
+            for (Pattern rule : naiveRules) {
+                if (rule.matcher(path).matches()) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+    
+    private static String toRegex(String glob) {
+        boolean directoryOnly = glob.endsWith("/");
+        String trimmed = glob.replaceAll("/+$", "");
+        String regex = trimmed.replace(".", "\\.").replace("?", "[^/]").replace("*", "[^/]*");
+        return (trimmed.contains("/") ? "" : "(.*/)?") + regex + (directoryOnly ? "/.*" : "(/.*)?");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+package com.folderdeleter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Read-only paths: the tree is generated once per trial and reused
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FolderScanBenchmark {
+    
+    @Param({"WIDE_FLAT", "DEEP_NARROW", "MANY_SMALL_FILES", "FEW_HUGE_FILES"})
+    public TreeShape shape;
+    
+    private File workDir;
+    private File tree;
+    private BenchmarkContext context;
+    private FolderManager folderManager;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("folderdeleter-bench").toFile();
+        tree = new File(workDir, "tree");
+        shape.create(tree);
+        context = new BenchmarkContext(workDir);
+        folderManager = new FolderManager(context);
+    }
+    
+    // Repeated query against an unchanged tree, served from the size cache
+    @Benchmark
+    public long getFolderSize() {
+        return folderManager.getFolderSize(tree.getAbsolutePath());
+    }
+    
+    @Benchmark
+    public long getFolderSizeUncached() {
+        FolderSizeService sizeService = FolderSizeService.getInstance(context);
+        sizeService.invalidate(tree);
+        return sizeService.getSize(tree);
+    }
+    
+    // Expands the first three levels through the lazy tree, as a user
+    // drilling into the picker would
+    @Benchmark
+    public int expandThreeLevels() {
+        return expand(tree, 0);
+    }
+    
+    private int expand(File dir, int depth) {
+        List<String> children = FolderTree.getInstance(context).listChildren(dir);
+        int count = children.size();
+        if (depth < 2) {
+            for (String child : children) {
+                count += expand(new File(child), depth + 1);
+            }
+        }
+        return count;
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TreeShape.deleteQuietly(workDir);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.folderdeleter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// isSystemCriticalFolder guards every selected folder; the trie walk and the
+// canonical path cache should keep it in the tens of nanoseconds
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProtectedPathBenchmark {
+    
+    @Param({
+        "/storage/emulated/0/DCIM/Camera",
+        "/storage/emulated/0/Android/data/com.whatsapp/files/Media",
+        "/system/app",
+        "/systemfoo/app",
+        "/storage/emulated/0/../../../system",
+        "/data/data/com.android.providers"
+    })
+    public String path;
+    
+    private FolderManager folderManager;
+    
+    @Setup
+    public void setUp() throws IOException {
+        folderManager = new FolderManager(new BenchmarkContext(Files.createTempDirectory("folderdeleter-bench").toFile()));
+    }
+    
+    @Benchmark
+    public boolean isSystemCriticalFolder() {
+        return folderManager.isSystemCriticalFolder(path);
+    }
+}
\ No newline at end of file
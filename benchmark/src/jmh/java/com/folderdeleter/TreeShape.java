@@ -0,0 +1,79 @@
+package com.folderdeleter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+// Synthetic directory trees modelled on what users point the app at
+public enum TreeShape {
+    
+    // One directory holding a very large number of files, like a chat media folder
+    WIDE_FLAT(1, 1, 20000, 512),
+    // A long single chain of directories with a few files per level
+    DEEP_NARROW(400, 1, 5, 512),
+    // A bushy tree of small files, like a thumbnail cache
+    MANY_SMALL_FILES(3, 8, 40, 2048),
+    // A handful of large (sparse) files, like recorded videos
+    FEW_HUGE_FILES(1, 1, 8, 256L * 1024 * 1024);
+    
+    private final int depth;
+    private final int fanOut;
+    private final int filesPerDirectory;
+    private final long fileSize;
+    
+    TreeShape(int depth, int fanOut, int filesPerDirectory, long fileSize) {
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.filesPerDirectory = filesPerDirectory;
+        this.fileSize = fileSize;
+    }
+    
+    public void create(File root) throws IOException {
+        if (!root.mkdirs() && !root.isDirectory()) {
+            throw new IOException("Could not create " + root);
+        }
+        populate(root, 0);
+    }
+    
+    private void populate(File dir, int level) throws IOException {
+        for (int i = 0; i < filesPerDirectory; i++) {
+            writeFile(new File(dir, "file-" + i + ".bin"));
+        }
+        
+        if (level >= depth) {
+            return;
+        }
+        
+        for (int i = 0; i < fanOut; i++) {
+            File child = new File(dir, "dir-" + i);
+            if (!child.mkdir()) {
+                throw new IOException("Could not create " + child);
+            }
+            populate(child, level + 1);
+        }
+    }
+    
+    private void writeFile(File file) throws IOException {
+        if (fileSize > 64 * 1024) {
+            // Sparse files keep the huge-file case cheap to generate
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(fileSize);
+            }
+        } else {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(new byte[(int) fileSize]);
+            }
+        }
+    }
+    
+    public static void deleteQuietly(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteQuietly(child);
+            }
+        }
+        file.delete();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,10 @@
+package android.content;
+
+import android.content.res.Configuration;
+
+public interface ComponentCallbacks {
+    
+    void onConfigurationChanged(Configuration newConfig);
+    
+    void onLowMemory();
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package android.content;
+
+public interface ComponentCallbacks2 extends ComponentCallbacks {
+    
+    int TRIM_MEMORY_RUNNING_LOW = 10;
+    int TRIM_MEMORY_BACKGROUND = 40;
+    
+    void onTrimMemory(int level);
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package android.content;
+
+import java.io.File;
+
+// JVM stand-in for the parts of Context the deletion engine touches
+public abstract class Context {
+    
+    public static final int MODE_PRIVATE = 0;
+    public static final String POWER_SERVICE = "power";
+    
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+    
+    public abstract File getFilesDir();
+    
+    public Context getApplicationContext() {
+        return this;
+    }
+    
+    public Object getSystemService(String name) {
+        return null;
+    }
+    
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        return null;
+    }
+    
+    // Memory trim callbacks never fire outside the framework
+    public void registerComponentCallbacks(ComponentCallbacks callbacks) {
+    }
+}
\ No newline at end of file
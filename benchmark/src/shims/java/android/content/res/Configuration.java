@@ -0,0 +1,4 @@
+package android.content.res;
+
+public class Configuration {
+}
\ No newline at end of file
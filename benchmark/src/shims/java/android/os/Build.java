@@ -0,0 +1,13 @@
+package android.os;
+
+public class Build {
+    
+    public static class VERSION {
+        // -Dbenchmark.sdkInt=21 exercises the pre-API 26 listing fallback
+        public static final int SDK_INT = Integer.getInteger("benchmark.sdkInt", 34);
+    }
+    
+    public static class VERSION_CODES {
+        public static final int O = 26;
+    }
+}
\ No newline at end of file
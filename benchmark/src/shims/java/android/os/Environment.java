@@ -0,0 +1,22 @@
+package android.os;
+
+import java.io.File;
+
+public class Environment {
+    
+    public static final String DIRECTORY_DOWNLOADS = "Download";
+    public static final String DIRECTORY_PICTURES = "Pictures";
+    public static final String DIRECTORY_MOVIES = "Movies";
+    
+    public static File getRootDirectory() {
+        return new File("/system");
+    }
+    
+    public static File getExternalStorageDirectory() {
+        return new File(System.getProperty("benchmark.externalStorage", "/storage/emulated/0"));
+    }
+    
+    public static File getExternalStoragePublicDirectory(String type) {
+        return new File(getExternalStorageDirectory(), type);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,8 @@
+package android.os;
+
+public class PowerManager {
+    
+    public boolean isInteractive() {
+        return false;
+    }
+}
\ No newline at end of file
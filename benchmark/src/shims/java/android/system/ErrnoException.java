@@ -0,0 +1,8 @@
+package android.system;
+
+public final class ErrnoException extends Exception {
+    
+    public ErrnoException(String functionName, Throwable cause) {
+        super(functionName, cause);
+    }
+}
\ No newline at end of file
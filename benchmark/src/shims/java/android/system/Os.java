@@ -0,0 +1,30 @@
+package android.system;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+public final class Os {
+    
+    public static StructStat stat(String path) throws ErrnoException {
+        return stat("stat", path);
+    }
+    
+    public static StructStat lstat(String path) throws ErrnoException {
+        return stat("lstat", path, LinkOption.NOFOLLOW_LINKS);
+    }
+    
+    private static StructStat stat(String functionName, String path, LinkOption... options) throws ErrnoException {
+        try {
+            Map<String, Object> attributes = Files.readAttributes(Paths.get(path), "unix:mode,dev,ino,size,lastModifiedTime", options);
+            return new StructStat((Integer) attributes.get("mode"), (Long) attributes.get("dev"),
+                (Long) attributes.get("ino"), (Long) attributes.get("size"),
+                ((FileTime) attributes.get("lastModifiedTime")).toMillis() / 1000L);
+        } catch (IOException | UnsupportedOperationException e) {
+            throw new ErrnoException(functionName, e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package android.system;
+
+public final class OsConstants {
+    
+    private static final int S_IFMT = 0170000;
+    
+    public static boolean S_ISDIR(int mode) {
+        return (mode & S_IFMT) == 0040000;
+    }
+    
+    public static boolean S_ISLNK(int mode) {
+        return (mode & S_IFMT) == 0120000;
+    }
+    
+    public static boolean S_ISREG(int mode) {
+        return (mode & S_IFMT) == 0100000;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package android.system;
+
+public final class StructStat {
+    
+    public final int st_mode;
+    public final long st_dev;
+    public final long st_ino;
+    public final long st_size;
+    public final long st_mtime;
+    
+    public StructStat(int mode, long dev, long ino, long size, long mtime) {
+        this.st_mode = mode;
+        this.st_dev = dev;
+        this.st_ino = ino;
+        this.st_size = size;
+        this.st_mtime = mtime;
+    }
+}
\ No newline at end of file
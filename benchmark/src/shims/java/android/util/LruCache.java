@@ -0,0 +1,66 @@
+package android.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// JVM stand-in for the framework LruCache: access-ordered, evicts by sizeOf
+public class LruCache<K, V> {
+    
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxSize;
+    private int size;
+    
+    public LruCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+    
+    public final synchronized V get(K key) {
+        return map.get(key);
+    }
+    
+    public final synchronized V put(K key, V value) {
+        V previous = map.put(key, value);
+        size += sizeOf(key, value);
+        if (previous != null) {
+            size -= sizeOf(key, previous);
+        }
+        trimToSize(maxSize);
+        return previous;
+    }
+    
+    public final synchronized V remove(K key) {
+        V previous = map.remove(key);
+        if (previous != null) {
+            size -= sizeOf(key, previous);
+        }
+        return previous;
+    }
+    
+    public synchronized void trimToSize(int maxSize) {
+        while (size > maxSize && !map.isEmpty()) {
+            Map.Entry<K, V> eldest = map.entrySet().iterator().next();
+            map.remove(eldest.getKey());
+            size -= sizeOf(eldest.getKey(), eldest.getValue());
+        }
+    }
+    
+    public final void evictAll() {
+        trimToSize(-1);
+    }
+    
+    public final synchronized int size() {
+        return size;
+    }
+    
+    public final synchronized int maxSize() {
+        return maxSize;
+    }
+    
+    public final synchronized Map<K, V> snapshot() {
+        return new LinkedHashMap<>(map);
+    }
+}
\ No newline at end of file
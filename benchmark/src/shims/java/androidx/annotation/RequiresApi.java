@@ -0,0 +1,5 @@
+package androidx.annotation;
+
+public @interface RequiresApi {
+    int value() default 1;
+}
\ No newline at end of file